@@ -0,0 +1,52 @@
+package com.haifa.zuzapp;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tracks which sequence numbers of a session the server has acknowledged.
+ *
+ * Batches may complete out of order when several are in flight, so acked
+ * ranges above the contiguous prefix are parked until the gap below them
+ * closes. The high-water mark is the largest seq such that every seq up to
+ * and including it has been acknowledged.
+ */
+public class AckTracker {
+
+    private long highWaterMark;
+    // first seq -> last seq of ranges acked above the high-water mark
+    private final TreeMap<Long, Long> pending = new TreeMap<>();
+
+    /**
+     * @param highWaterMark seq already known to be acknowledged (0 when none)
+     */
+    public AckTracker(long highWaterMark) {
+        this.highWaterMark = highWaterMark;
+    }
+
+    public synchronized void ack(long firstSeq, long lastSeq) {
+        if (lastSeq <= highWaterMark) return;
+
+        Long existing = pending.get(firstSeq);
+        if (existing == null || existing < lastSeq) {
+            pending.put(firstSeq, lastSeq);
+        }
+
+        Map.Entry<Long, Long> next;
+        while ((next = pending.firstEntry()) != null && next.getKey() <= highWaterMark + 1) {
+            pending.pollFirstEntry();
+            highWaterMark = Math.max(highWaterMark, next.getValue());
+        }
+    }
+
+    public synchronized long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Number of acked ranges still waiting for a gap below them to close
+     */
+    public synchronized int getPendingRangeCount() {
+        return pending.size();
+    }
+}
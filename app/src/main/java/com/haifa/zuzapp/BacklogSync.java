@@ -0,0 +1,418 @@
+package com.haifa.zuzapp;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Sends what live uploading did not: sessions recorded in DEFERRED mode,
+ * and the tail of FULL sessions whose batches were still in flight, failed
+ * or were dropped while offline.
+ *
+ * Pending records are read back from the session CSVs, merged across
+ * sessions into large chunks and upserted one chunk at a time (gzip-
+ * compressed if enabled, see SupabaseClient.upsertMovementRecordsNow; once
+ * the server refuses compression that is remembered in GZIP_REJECTED_FILE).
+ * Progress is saved
+ * to each session's SessionSyncState after every acknowledged chunk, so an
+ * interrupted sync resumes from the next unsent row. Upserts ignore
+ * duplicates, so rows resent after a crash between send and save are
+ * harmless.
+ */
+public class BacklogSync {
+
+    private static final String TAG = "BacklogSync";
+
+    public static final int DEFAULT_CHUNK_RECORDS = 5000;
+
+    // Present once the server has refused a compressed body; later runs send plain
+    static final String GZIP_REJECTED_FILE = "gzip-rejected";
+
+    // A session whose CSV was written more recently than this is still being recorded
+    private static final long ACTIVE_RECORDING_MILLIS = 10 * 60_000L;
+
+    public enum Outcome {
+        // Nothing left to send
+        COMPLETE,
+        // A request failed; try again later
+        RETRY,
+        // Asked to stop between chunks; progress so far is saved
+        STOPPED
+    }
+
+    private final SupabaseClient client;
+    private final File directory;
+    private int chunkRecords = DEFAULT_CHUNK_RECORDS;
+
+    private long recordsSent;
+    private int requestsSent;
+
+    public BacklogSync(SupabaseClient client, File directory) {
+        this.client = client;
+        this.directory = directory;
+    }
+
+    public BacklogSync setChunkRecords(int chunkRecords) {
+        this.chunkRecords = Math.max(1, chunkRecords);
+        return this;
+    }
+
+    /**
+     * Sync every lagging session in the directory
+     *
+     * @param stopRequested polled between requests (WorkManager's isStopped)
+     */
+    public Outcome run(BooleanSupplier stopRequested) {
+        File gzipRejected = new File(directory, GZIP_REJECTED_FILE);
+        if (gzipRejected.exists()) {
+            client.setGzipBacklog(false);
+        }
+        boolean gzipAtStart = client.isGzipBacklog();
+        try {
+            return sync(stopRequested);
+        } finally {
+            if (gzipAtStart && !client.isGzipBacklog()) {
+                try {
+                    gzipRejected.createNewFile();
+                } catch (IOException e) {
+                    Log.e(TAG, "Could not remember that gzip was rejected", e);
+                }
+            }
+        }
+    }
+
+    private Outcome sync(BooleanSupplier stopRequested) {
+        long now = System.currentTimeMillis();
+        List<SessionSyncState> pending = new ArrayList<>();
+        for (SessionSyncState state : SessionSyncState.findAll(directory)) {
+            if (state.quarantined != null) {
+                Log.w(TAG, "Skipping quarantined session " + state.sessionId + ": " + state.quarantined);
+                continue;
+            }
+            if (state.recording && now - state.getCsvFile().lastModified() < ACTIVE_RECORDING_MILLIS) {
+                continue;
+            }
+            if (state.isComplete() || !state.getCsvFile().exists()) {
+                state.delete();
+                continue;
+            }
+            pending.add(state);
+        }
+        if (pending.isEmpty()) return Outcome.COMPLETE;
+        Log.d(TAG, pending.size() + " session(s) to sync");
+
+        List<CsvCursor> cursors = new ArrayList<>();
+        try {
+            for (SessionSyncState state : pending) {
+                if (state.hasRecordsPending()) {
+                    try {
+                        cursors.add(new CsvCursor(state));
+                    } catch (MalformedCsvException e) {
+                        quarantine(state, e.getMessage());
+                    }
+                }
+            }
+
+            // Records first, so a session row never claims "completed" ahead of its data
+            while (!cursors.isEmpty()) {
+                if (stopRequested.getAsBoolean()) return Outcome.STOPPED;
+
+                JSONArray chunk = new JSONArray();
+                List<CsvCursor> contributors = new ArrayList<>();
+                for (CsvCursor cursor : cursors) {
+                    int before = chunk.length();
+                    cursor.readInto(chunk, chunkRecords);
+                    if (chunk.length() > before || cursor.exhausted) {
+                        contributors.add(cursor);
+                    }
+                    if (chunk.length() >= chunkRecords) break;
+                }
+
+                if (chunk.length() > 0) {
+                    client.upsertMovementRecordsNow(chunk);
+                    recordsSent += chunk.length();
+                    requestsSent++;
+                }
+                for (CsvCursor cursor : contributors) {
+                    cursor.commit();
+                    if (cursor.exhausted) {
+                        cursor.close();
+                        cursors.remove(cursor);
+                        if (cursor.malformed != null) {
+                            quarantine(cursor.state, cursor.malformed);
+                        }
+                    }
+                }
+            }
+
+            for (SessionSyncState state : pending) {
+                if (stopRequested.getAsBoolean()) return Outcome.STOPPED;
+                if (state.quarantined != null) continue;
+                if (!state.sessionRowSynced) {
+                    client.upsertSessionNow(sessionRow(state));
+                    requestsSent++;
+                    state.sessionRowSynced = true;
+                }
+                state.recording = false;
+                if (state.isComplete()) {
+                    state.delete();
+                } else {
+                    state.save();
+                }
+            }
+            Log.d(TAG, "Backlog synced: " + recordsSent + " records in " + requestsSent + " request(s)");
+            return Outcome.COMPLETE;
+
+        } catch (Exception e) {
+            Log.e(TAG, "Backlog sync failed after " + recordsSent + " records", e);
+            return Outcome.RETRY;
+        } finally {
+            for (CsvCursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Set a session aside so one unreadable CSV does not hold back the rest.
+     * Rows before the bad one are already sent; the sidecar is kept so the
+     * session stays findable.
+     */
+    private static void quarantine(SessionSyncState state, String reason) throws IOException {
+        Log.e(TAG, "Quarantining session " + state.sessionId + ": " + reason);
+        state.quarantined = reason;
+        state.save();
+    }
+
+    public long getRecordsSent() {
+        return recordsSent;
+    }
+
+    public int getRequestsSent() {
+        return requestsSent;
+    }
+
+    private static JSONObject sessionRow(SessionSyncState state) throws Exception {
+        JSONObject row = new JSONObject();
+        row.put("session_id", state.sessionId);
+        row.put("experimenter_code", state.experimenterCode);
+        row.put("recording_id", state.recordingId);
+        if (state.startTime != null) row.put("start_time", state.startTime);
+        row.put("start_time_millis", state.startTimeMillis);
+        if (state.deviceModel != null) row.put("device_model", state.deviceModel);
+        if (state.androidVersion != null) row.put("android_version", state.androidVersion);
+        if (state.filePath != null) row.put("file_path", state.filePath);
+        if (state.endTimeMillis > 0) {
+            row.put("end_time", state.endTime);
+            row.put("end_time_millis", state.endTimeMillis);
+            row.put("duration_ms", state.durationMs);
+            row.put("status", "completed");
+        } else {
+            // Recording never stopped (app killed)
+            row.put("status", "started");
+        }
+        return row;
+    }
+
+    /**
+     * The CSV is not in the layout MovementLogger writes; retrying cannot help
+     */
+    private static class MalformedCsvException extends IOException {
+        MalformedCsvException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Reads a session CSV from the row after the last synced one, tracking
+     * byte offsets so progress can be saved exactly.
+     *
+     * Only the numeric columns are read, and they are located from the end of
+     * the row: SessionID and ExperimenterCode are free text and may contain
+     * commas. The ids sent come from the SessionSyncState instead.
+     */
+    private static class CsvCursor implements Closeable {
+        private static final String[] FLOAT_COLUMNS = {"Magnitude", "RawDelta", "AngleInDegrees",
+                "CumulativeAngle", "RelativeAngle", "Pitch", "Roll", "CalibratedYaw", "RawYaw"};
+        private static final String[] FLOAT_FIELDS = {"magnitude", "raw_delta", "angle_in_degrees",
+                "cumulative_angle", "relative_angle", "pitch", "roll", "calibrated_yaw", "yaw"};
+
+        final SessionSyncState state;
+        private final BufferedInputStream in;
+        private byte[] lineBytes = new byte[256];
+        private String line;
+        // Header columns this row must have at least
+        private final int columnCount;
+        // Positions counted back from the end of the row (1 = last column)
+        private final int timestampFromEnd;
+        private final int elapsedMsFromEnd;
+        private final int seqFromEnd;
+        private final int[] floatFromEnd = new int[FLOAT_COLUMNS.length];
+
+        private long offset;
+        // Read but not yet acknowledged
+        private long readSeq;
+        private long readOffset;
+        boolean exhausted;
+        // Set when a row could not be parsed; reading stops before it
+        String malformed;
+
+        CsvCursor(SessionSyncState state) throws IOException {
+            this.state = state;
+            this.in = new BufferedInputStream(new FileInputStream(state.getCsvFile()), 64 * 1024);
+            try {
+                if (!readLine()) {
+                    throw new MalformedCsvException("Empty session file " + state.getCsvFile());
+                }
+                List<String> columns = Arrays.asList(line.trim().split(",", -1));
+                columnCount = columns.size();
+                timestampFromEnd = fromEnd(columns, "Timestamp");
+                elapsedMsFromEnd = fromEnd(columns, "ElapsedTimeMs");
+                seqFromEnd = fromEnd(columns, "Seq");
+                if (seqFromEnd == 0 || timestampFromEnd == 0 || elapsedMsFromEnd == 0) {
+                    throw new MalformedCsvException("Missing Timestamp, ElapsedTimeMs or Seq column in "
+                            + state.getCsvFile());
+                }
+                for (int i = 0; i < FLOAT_COLUMNS.length; i++) {
+                    floatFromEnd[i] = fromEnd(columns, FLOAT_COLUMNS[i]);
+                }
+
+                if (state.csvOffset > offset) {
+                    skipTo(state.csvOffset);
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+            readSeq = state.syncedSeq;
+            readOffset = offset;
+        }
+
+        private static int fromEnd(List<String> columns, String name) {
+            int index = columns.indexOf(name);
+            return index < 0 ? 0 : columns.size() - index;
+        }
+
+        /**
+         * Append rows until the chunk holds limit records or the file ends.
+         * A row that cannot be parsed ends reading and sets malformed.
+         */
+        void readInto(JSONArray chunk, int limit) throws Exception {
+            while (chunk.length() < limit) {
+                if (!readLine()) {
+                    // End of file; a row cut short by a crash is never sent
+                    exhausted = true;
+                    return;
+                }
+                if (line.isEmpty()) {
+                    readOffset = offset;
+                    continue;
+                }
+
+                String[] f = line.split(",", -1);
+                JSONObject record;
+                long seq;
+                try {
+                    if (f.length < columnCount) {
+                        throw new NumberFormatException("only " + f.length + " columns");
+                    }
+                    seq = Long.parseLong(f[f.length - seqFromEnd].trim());
+                    if (seq <= state.syncedSeq) {
+                        // Resuming from a high-water mark without a saved offset
+                        readOffset = offset;
+                        continue;
+                    }
+                    record = new JSONObject();
+                    record.put("session_id", state.sessionId);
+                    record.put("experimenter_code", state.experimenterCode);
+                    record.put("recording_id", state.recordingId);
+                    record.put("seq", seq);
+                    record.put("timestamp", f[f.length - timestampFromEnd]);
+                    record.put("elapsed_time_ms", Long.parseLong(f[f.length - elapsedMsFromEnd].trim()));
+                    for (int i = 0; i < floatFromEnd.length; i++) {
+                        if (floatFromEnd[i] > 0) {
+                            record.put(FLOAT_FIELDS[i], Float.parseFloat(f[f.length - floatFromEnd[i]]));
+                        }
+                    }
+                } catch (NumberFormatException e) {
+                    malformed = "Unreadable row after seq " + readSeq + " in " + state.getCsvFile().getName()
+                            + ": " + e.getMessage();
+                    exhausted = true;
+                    return;
+                }
+                chunk.put(record);
+                readSeq = seq;
+                readOffset = offset;
+            }
+        }
+
+        /**
+         * The rows read so far are acknowledged: save the progress
+         */
+        void commit() throws IOException {
+            state.syncedSeq = readSeq;
+            state.csvOffset = readOffset;
+            if (exhausted && malformed == null && state.lastSeq < readSeq) {
+                state.lastSeq = readSeq;
+            }
+            state.save();
+        }
+
+        /**
+         * Read the next complete line (without the newline) into line,
+         * decoded as UTF-8
+         */
+        private boolean readLine() throws IOException {
+            in.mark(Integer.MAX_VALUE);
+            int length = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    offset += length + 1;
+                    if (length > 0 && lineBytes[length - 1] == '\r') length--;
+                    line = new String(lineBytes, 0, length, StandardCharsets.UTF_8);
+                    return true;
+                }
+                if (length == lineBytes.length) {
+                    lineBytes = Arrays.copyOf(lineBytes, length * 2);
+                }
+                lineBytes[length++] = (byte) b;
+            }
+            // Incomplete last line: do not consume it
+            in.reset();
+            line = null;
+            return false;
+        }
+
+        private void skipTo(long target) throws IOException {
+            long toSkip = target - offset;
+            while (toSkip > 0) {
+                long skipped = in.skip(toSkip);
+                if (skipped <= 0) throw new IOException("Sync offset beyond end of " + state.getCsvFile());
+                toSkip -= skipped;
+            }
+            offset = target;
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing session file", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.haifa.zuzapp;
+
+/**
+ * Online segmentation of the processed gyro stream into movement bouts.
+ *
+ * Uses the same stillness test as the relativeAngle reset in MainActivity
+ * (a sample whose thresholded angle is exactly 0), with hysteresis on both
+ * ends: a run of motion only becomes a bout once its velocity reaches
+ * startVelocity, and a bout only ends after holdNanos of stillness. Motion
+ * that resumes in the opposite direction during the hold starts a new bout,
+ * so swivel-stop-swivel-back yields two bouts.
+ *
+ * Single-threaded: feed every sample of a session in order.
+ */
+public class BoutSegmenter {
+
+    public static final float DEFAULT_START_VELOCITY = 5.0f;      // deg/s
+    public static final long DEFAULT_HOLD_NANOS = 300_000_000L;   // 300 ms
+    public static final float DEFAULT_MIN_ROTATION = 2.0f;        // deg
+
+    // A pause longer than this followed by motion the other way is a new bout
+    private static final long REVERSAL_PAUSE_NANOS = 50_000_000L;
+
+    /**
+     * One completed bout (times are session-elapsed sensor nanoseconds)
+     */
+    public static class Bout {
+        public int index;
+        public long startNanos;
+        public long endNanos;
+        public float netRotation;
+        public float absoluteRotation;
+        public float peakVelocity;
+        public float pitchMin;
+        public float pitchMax;
+        public float rollMin;
+        public float rollMax;
+        public int sampleCount;
+
+        /**
+         * +1 for counter-clockwise (positive gyro Z), -1 for clockwise
+         */
+        public int getDirection() {
+            return netRotation >= 0 ? 1 : -1;
+        }
+
+        public long getDurationNanos() {
+            return endNanos - startNanos;
+        }
+    }
+
+    private final float startVelocity;
+    private final long holdNanos;
+    private final float minRotation;
+
+    private Bout current;
+    private boolean confirmed;
+    private long lastMovingNanos;
+    private int nextIndex = 1;
+
+    public BoutSegmenter() {
+        this(DEFAULT_START_VELOCITY, DEFAULT_HOLD_NANOS, DEFAULT_MIN_ROTATION);
+    }
+
+    public BoutSegmenter(float startVelocity, long holdNanos, float minRotation) {
+        this.startVelocity = startVelocity;
+        this.holdNanos = holdNanos;
+        this.minRotation = minRotation;
+    }
+
+    /**
+     * Feed one sample.
+     *
+     * @param velocity thresholded angular velocity (deg/s, signed; 0 when still)
+     * @param angle    rotation during this sample (deg)
+     * @return a bout that ended with this sample, or null
+     */
+    public Bout update(long elapsedNanos, float velocity, float angle, float pitch, float roll) {
+        boolean moving = angle != 0.0f;
+        Bout finished = null;
+
+        if (current != null && !moving && elapsedNanos - lastMovingNanos >= holdNanos) {
+            finished = close();
+        } else if (current != null && moving && confirmed
+                && elapsedNanos - lastMovingNanos > REVERSAL_PAUSE_NANOS
+                && Math.signum(angle) != Math.signum(current.netRotation)) {
+            // Direction reversed after a pause: the previous swivel is over
+            finished = close();
+        }
+
+        if (moving) {
+            if (current == null) {
+                current = new Bout();
+                current.startNanos = elapsedNanos;
+                current.pitchMin = current.pitchMax = pitch;
+                current.rollMin = current.rollMax = roll;
+                confirmed = false;
+            }
+            current.endNanos = elapsedNanos;
+            current.netRotation += angle;
+            current.absoluteRotation += Math.abs(angle);
+            if (Math.abs(velocity) > Math.abs(current.peakVelocity)) {
+                current.peakVelocity = velocity;
+            }
+            current.pitchMin = Math.min(current.pitchMin, pitch);
+            current.pitchMax = Math.max(current.pitchMax, pitch);
+            current.rollMin = Math.min(current.rollMin, roll);
+            current.rollMax = Math.max(current.rollMax, roll);
+            current.sampleCount++;
+            confirmed |= Math.abs(velocity) >= startVelocity;
+            lastMovingNanos = elapsedNanos;
+        } else if (current != null && !confirmed) {
+            // Motion ended before it ever looked like a real bout
+            current = null;
+        }
+        return finished;
+    }
+
+    /**
+     * End of session: close any bout still in progress
+     */
+    public Bout flush() {
+        return current != null ? close() : null;
+    }
+
+    private Bout close() {
+        Bout bout = current;
+        current = null;
+        if (!confirmed || bout.absoluteRotation < minRotation) {
+            return null;
+        }
+        bout.index = nextIndex++;
+        return bout;
+    }
+}
@@ -0,0 +1,180 @@
+package com.haifa.zuzapp;
+
+import android.hardware.Sensor;
+import android.util.Log;
+
+/**
+ * Gyroscope processing moved off the sensor callback: calibration, baseline
+ * subtraction and thresholding, angle integration, and logging of each
+ * sample (with the latest orientation from the RotationVectorProcessor).
+ *
+ * Runs on its own SensorEventBus worker; the UI is told about calibration
+ * and the current angle through {@link Listener}, which is called on that
+ * worker thread.
+ */
+public class GyroAngleProcessor implements SensorProcessor {
+
+    /**
+     * Callbacks on the processor thread; implementations post to the UI
+     */
+    public interface Listener {
+        void onCalibrationProgress(int samples, int total);
+
+        void onCalibrationFinished(float baselineNoise, float baselineYaw);
+
+        void onAngleUpdate(float relativeAngle, float calibratedYaw);
+    }
+
+    public static final int CALIBRATION_SAMPLE_COUNT = 50;
+
+    // Threshold to filter noise (applied after baseline subtraction)
+    private static final float MOVEMENT_THRESHOLD = 0.5f;
+
+    // The on-screen angle only needs to refresh at display rate
+    private static final long DISPLAY_INTERVAL_NANOS = 50_000_000L;
+
+    private final RotationVectorProcessor rotation;
+    private final MovementLogger logger;
+    private final Listener listener;
+    private final float[] orientation = new float[3];
+
+    // Calibration variables
+    private float baselineNoise = 0.0f;
+    private float baselineYaw = 0.0f;
+    private boolean isCalibrating = false;
+    private int calibrationSamples = 0;
+    private float calibrationSum = 0.0f;
+    private float yawCalibrationSum = 0.0f;
+
+    // Session state
+    private boolean isRecording = false;
+    private String sessionId;
+    private String experimenterCode;
+    private long lastTimestamp = 0;
+    private float cumulativeAngle = 0.0f; // Accumulated rotation angle
+    private float relativeAngle = 0.0f; // Relative rotation angle
+    private long lastDisplayTimestamp = 0;
+
+    public GyroAngleProcessor(RotationVectorProcessor rotation, MovementLogger logger, Listener listener) {
+        this.rotation = rotation;
+        this.logger = logger;
+        this.listener = listener;
+    }
+
+    @Override
+    public int getSensorType() {
+        return Sensor.TYPE_GYROSCOPE;
+    }
+
+    public synchronized void startCalibration() {
+        isCalibrating = true;
+        calibrationSamples = 0;
+        calibrationSum = 0.0f;
+        yawCalibrationSum = 0.0f;
+    }
+
+    public synchronized boolean isCalibrating() {
+        return isCalibrating;
+    }
+
+    public synchronized float getBaselineNoise() {
+        return baselineNoise;
+    }
+
+    /**
+     * Start logging samples; the logger session must already be started
+     */
+    public synchronized void startRecording(String sessionId, String experimenterCode) {
+        this.sessionId = sessionId;
+        this.experimenterCode = experimenterCode;
+        cumulativeAngle = 0.0f; // Reset cumulative angle for new session
+        lastTimestamp = 0; // Reset timestamp for angle calculation
+        isRecording = true;
+    }
+
+    /**
+     * Stop logging samples; call before stopping the logger session
+     */
+    public synchronized void stopRecording() {
+        isRecording = false;
+    }
+
+    @Override
+    public synchronized void process(SensorSample sample) {
+        // Track Z-axis rotation (can be positive or negative for direction)
+        // Convert from radians/sec to degrees/sec
+        float rawDelta = (float) Math.toDegrees(sample.values[2]);
+
+        rotation.getOrientation(orientation);
+        float pitch = orientation[0];
+        float roll = orientation[1];
+        float yaw = orientation[2];
+
+        // Handle Calibration Phase
+        if (isCalibrating) {
+            calibrationSum += Math.abs(rawDelta);
+            yawCalibrationSum += Math.abs(yaw);
+            calibrationSamples++;
+            listener.onCalibrationProgress(calibrationSamples, CALIBRATION_SAMPLE_COUNT);
+
+            if (calibrationSamples >= CALIBRATION_SAMPLE_COUNT) {
+                baselineNoise = Math.abs(calibrationSum) / CALIBRATION_SAMPLE_COUNT;
+                baselineYaw = Math.abs(yawCalibrationSum) / CALIBRATION_SAMPLE_COUNT;
+                isCalibrating = false;
+                listener.onCalibrationFinished(baselineNoise, baselineYaw);
+            }
+            return;
+        }
+
+        // If not recording, just return (but don't show data)
+        if (!isRecording)
+            return;
+
+        // Calculate time delta in seconds
+        long currentTimestamp = sample.timestamp;
+        float deltaSeconds = 0.0f;
+        if (lastTimestamp != 0) {
+            deltaSeconds = (currentTimestamp - lastTimestamp) / 1_000_000_000.0f; // Convert nanoseconds to seconds
+        }
+        lastTimestamp = currentTimestamp;
+
+        // Subtract baseline offset from calibration
+        float magnitude = Math.max(0.0f, Math.abs(rawDelta) - baselineNoise);
+        float delta = Math.copySign(magnitude, rawDelta);
+
+        // Apply threshold to filter noise while preserving direction
+        if (Math.abs(delta) < Math.abs(MOVEMENT_THRESHOLD)) {
+            delta = 0.0f;
+        }
+
+        // Calculate angle in degrees by multiplying magnitude delta with delta seconds
+        float angleInDegrees = delta * deltaSeconds;
+
+        // Accumulate the angle to get total rotation from session start
+        cumulativeAngle += angleInDegrees;
+        relativeAngle += angleInDegrees;
+        if (angleInDegrees == 0.0f) {
+            relativeAngle = 0.0f;
+        }
+
+        Log.println(Log.DEBUG, "ANGLE",
+                "Incremental Angle: " + angleInDegrees + " | Cumulative: " + cumulativeAngle);
+        Log.println(Log.DEBUG, "RELATIVE ANGLE",
+                "Relative Angle: " + relativeAngle);
+
+        // Apply yaw calibration (subtract baseline)
+        float calibratedYaw = Math.abs(Math.abs(yaw) - Math.abs(baselineYaw));
+        calibratedYaw = Math.copySign(calibratedYaw, yaw);
+
+        if (currentTimestamp - lastDisplayTimestamp >= DISPLAY_INTERVAL_NANOS) {
+            lastDisplayTimestamp = currentTimestamp;
+            listener.onAngleUpdate(relativeAngle, calibratedYaw);
+        }
+
+        // Log the movement
+        logger.logMovement(currentTimestamp, sessionId, experimenterCode, delta, rawDelta, angleInDegrees,
+                cumulativeAngle, relativeAngle, pitch, roll,
+                calibratedYaw,
+                yaw);
+    }
+}
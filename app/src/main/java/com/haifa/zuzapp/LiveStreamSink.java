@@ -0,0 +1,258 @@
+package com.haifa.zuzapp;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Optional live feed of processed samples to a dashboard on the local
+ * network, as compact binary UDP datagrams.
+ *
+ * publish() only copies the sample into a preallocated ring (dropping it if
+ * the sender falls behind), so the recording path never waits on the
+ * network. A sender thread sends whatever is queued as soon as it arrives,
+ * up to MAX_SAMPLES_PER_FRAME per datagram.
+ *
+ * Frame layout (big-endian):
+ * <pre>
+ *  header  int magic 'ZLV1', short version, short sampleCount,
+ *          int frameSeq, int droppedSamples, long sessionStartWallMillis
+ *  sample  long elapsedNanos, float magnitude, angleInDegrees,
+ *          cumulativeAngle, pitch, roll, calibratedYaw
+ * </pre>
+ */
+public class LiveStreamSink implements Closeable {
+
+    private static final String TAG = "LiveStreamSink";
+
+    public static final int DEFAULT_PORT = 48500;
+    public static final int MAGIC = 0x5A4C5631;
+    public static final short VERSION = 1;
+    public static final int HEADER_BYTES = 24;
+    public static final int SAMPLE_BYTES = 32;
+    // Keeps a datagram under a 1500-byte Ethernet MTU
+    public static final int MAX_SAMPLES_PER_FRAME = 40;
+
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final long SENDER_POLL_NANOS = 100_000_000L;
+
+    private final String host;
+    private final int port;
+    private final int decimation;
+    private final SensorSampleQueue queue = new SensorSampleQueue(QUEUE_CAPACITY);
+
+    // Producer-side scratch (publish is called from one thread at a time)
+    private final float[] scratch = new float[6];
+    private long publishCount;
+
+    private volatile long sessionStartWallMillis;
+    private volatile boolean running;
+    private volatile long framesSent;
+    private volatile long sendErrors;
+    private Thread sender;
+
+    /**
+     * @param decimation send every Nth published sample (1 = full rate)
+     */
+    public LiveStreamSink(String host, int port, int decimation) {
+        this.host = host;
+        this.port = port;
+        this.decimation = Math.max(1, decimation);
+    }
+
+    /**
+     * Parse "host", "host:port", "[v6]" or "[v6]:port", optionally followed
+     * by "/N" to send every Nth sample (e.g. "laptop.local:48500/4" for 50 Hz
+     * from a 200 Hz session). Without a suffix every sample is sent.
+     *
+     * @throws IllegalArgumentException for a malformed target, a port
+     *         outside 1..65535 or a decimation below 1, so the caller can
+     *         report it before recording
+     */
+    public static LiveStreamSink forTarget(String target) {
+        int decimation = 1;
+        int slash = target.lastIndexOf('/');
+        if (slash >= 0) {
+            try {
+                decimation = Integer.parseInt(target.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad decimation in " + target);
+            }
+            if (decimation < 1) {
+                throw new IllegalArgumentException("Decimation must be at least 1: " + decimation);
+            }
+            target = target.substring(0, slash);
+        }
+
+        String host = target;
+        String portText = null;
+        if (target.startsWith("[")) {
+            int close = target.indexOf(']');
+            if (close < 0) {
+                throw new IllegalArgumentException("Missing ] in " + target);
+            }
+            host = target.substring(1, close);
+            String rest = target.substring(close + 1);
+            if (!rest.isEmpty()) {
+                if (rest.charAt(0) != ':') {
+                    throw new IllegalArgumentException("Expected :port after ] in " + target);
+                }
+                portText = rest.substring(1);
+            }
+        } else {
+            int colon = target.indexOf(':');
+            if (colon >= 0) {
+                if (target.indexOf(':', colon + 1) >= 0) {
+                    throw new IllegalArgumentException("Write IPv6 addresses as [address]:port");
+                }
+                host = target.substring(0, colon);
+                portText = target.substring(colon + 1);
+            }
+        }
+        if (host.isEmpty()) {
+            throw new IllegalArgumentException("No host in " + target);
+        }
+
+        int port = DEFAULT_PORT;
+        if (portText != null) {
+            try {
+                port = Integer.parseInt(portText);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad port in " + target);
+            }
+            if (port < 1 || port > 65535) {
+                throw new IllegalArgumentException("Port out of range (1-65535): " + port);
+            }
+        }
+        return new LiveStreamSink(host, port, decimation);
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        sender = new Thread(this::sendLoop, "live-stream");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * Anchor for the elapsed times that follow; receivers add the two to get
+     * wall time
+     */
+    public void beginSession(long startWallMillis) {
+        this.sessionStartWallMillis = startWallMillis;
+    }
+
+    /**
+     * Queue one processed sample. Never blocks.
+     */
+    public void publish(long elapsedNanos, float magnitude, float angleInDegrees, float cumulativeAngle,
+            float pitch, float roll, float calibratedYaw) {
+        if (publishCount++ % decimation != 0) return;
+        scratch[0] = magnitude;
+        scratch[1] = angleInDegrees;
+        scratch[2] = cumulativeAngle;
+        scratch[3] = pitch;
+        scratch[4] = roll;
+        scratch[5] = calibratedYaw;
+        queue.offer(elapsedNanos, scratch);
+    }
+
+    private void sendLoop() {
+        // Resolve here rather than on the caller's (UI) thread
+        InetSocketAddress address;
+        try {
+            address = new InetSocketAddress(InetAddress.getByName(host), port);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "Cannot resolve live stream host " + host, e);
+            running = false;
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + MAX_SAMPLES_PER_FRAME * SAMPLE_BYTES);
+        DatagramPacket packet = new DatagramPacket(buffer.array(), 0, address);
+        SensorSample sample = new SensorSample();
+        int frameSeq = 0;
+
+        try (DatagramSocket socket = new DatagramSocket()) {
+            while (running) {
+                if (!queue.take(sample, SENDER_POLL_NANOS)) continue;
+
+                buffer.clear();
+                buffer.position(HEADER_BYTES);
+                int count = 0;
+                do {
+                    buffer.putLong(sample.timestamp);
+                    for (int i = 0; i < 6; i++) {
+                        buffer.putFloat(sample.values[i]);
+                    }
+                    count++;
+                } while (count < MAX_SAMPLES_PER_FRAME && queue.poll(sample));
+
+                buffer.putInt(0, MAGIC);
+                buffer.putShort(4, VERSION);
+                buffer.putShort(6, (short) count);
+                buffer.putInt(8, frameSeq++);
+                buffer.putInt(12, (int) queue.getDroppedCount());
+                buffer.putLong(16, sessionStartWallMillis);
+
+                packet.setLength(buffer.position());
+                try {
+                    socket.send(packet);
+                    framesSent++;
+                } catch (IOException e) {
+                    // Nobody listening or network down; the dashboard is best effort
+                    if (sendErrors++ == 0) {
+                        Log.w(TAG, "Live stream send failed", e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot open live stream socket", e);
+        }
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getDecimation() {
+        return decimation;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    /**
+     * Samples dropped because the sender fell behind
+     */
+    public long getDroppedCount() {
+        return queue.getDroppedCount();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!running && sender == null) return;
+        running = false;
+        if (sender != null) {
+            sender.interrupt();
+            try {
+                sender.join(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sender = null;
+        }
+    }
+}
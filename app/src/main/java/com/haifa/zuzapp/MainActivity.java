@@ -1,16 +1,16 @@
 package com.haifa.zuzapp;
 
 import android.content.Context;
+import android.content.Intent;
 import android.graphics.Color;
 import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -21,7 +21,11 @@ import com.haifa.zuzapp.MovementLogger;
 
 import java.util.UUID;
 
-public class MainActivity extends AppCompatActivity implements SensorEventListener {
+public class MainActivity extends AppCompatActivity implements GyroAngleProcessor.Listener {
+
+    private static final String TAG = "MainActivity";
+    // Queued samples normally drain in a few ms; bounded so Stop never hangs
+    private static final long STOP_DRAIN_TIMEOUT_MS = 500;
 
     // UI Components
     private TextInputEditText etExperimenterCode;
@@ -31,38 +35,31 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     private TextView tvStatus;
     private TextView tvSensorData;
     private TextView tvCalibrationStatus;
+    private CheckBox cbBoutsOnly;
+    private CheckBox cbSyncLater;
+    private TextInputEditText etLiveTarget;
 
     // Sensor Logic
     private SensorManager sensorManager;
     private Sensor gyroscope;
     private Sensor rotation;
 
+    // The listener only queues events; processors run on their own threads
+    private SensorEventBus sensorBus;
+    private RotationVectorProcessor rotationProcessor;
+    private GyroAngleProcessor gyroProcessor;
+
     // Logging Logic
     private MovementLogger logger;
     private boolean isRecording = false;
     private String currentSessionId;
+    private LiveStreamSink liveStream;
+    // Bus drop count when the session started (the bus counts across sessions)
+    private long droppedAtSessionStart;
 
-    private float lastLoggedDelta = -1.0f;
-    private long lastTimestamp = 0;
-    private float cumulativeAngle = 0.0f; // Accumulated rotation angle
-    private float relativeAngle = 0.0f; // Relative rotation angle
-
-    // Rotation sensor values
-    private float pitch = 0.0f;
-    private float roll = 0.0f;
-    private float yaw = 0.0f;
-
-    // Calibration variables
+    // Calibration state as seen by the UI (the processor owns the real state)
     private float baselineNoise = 0.0f;
-    private float baselineYaw = 0.0f;
     private boolean isCalibrating = false;
-    private int calibrationSamples = 0;
-    private float calibrationSum = 0.0f;
-    private float yawCalibrationSum = 0.0f;
-    private static final int CALIBRATION_SAMPLE_COUNT = 50;
-
-    // Threshold to filter noise (applied after baseline subtraction)
-    private static final float MOVEMENT_THRESHOLD = 0.5f;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -73,8 +70,9 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 
         initializeViews();
-        initializeSensors();
         logger = new MovementLogger();
+        SyncWorker.schedulePeriodic(this);
+        initializeSensors();
 
         // Auto-calibrate on startup
         startCalibration();
@@ -88,9 +86,17 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         tvStatus = findViewById(R.id.tvStatus);
         tvSensorData = findViewById(R.id.tvSensorData);
         tvCalibrationStatus = findViewById(R.id.tvCalibrationStatus);
+        cbBoutsOnly = findViewById(R.id.cbBoutsOnly);
+        cbSyncLater = findViewById(R.id.cbSyncLater);
+        // Deferred sync uploads full records later, so it excludes bouts-only
+        cbSyncLater.setOnCheckedChangeListener((v, checked) -> cbBoutsOnly.setEnabled(!checked));
+        etLiveTarget = findViewById(R.id.etLiveTarget);
 
         btnToggleSession.setOnClickListener(v -> toggleSession());
 
+        Button btnViewSessions = findViewById(R.id.btnViewSessions);
+        btnViewSessions.setOnClickListener(v -> startActivity(new Intent(this, SessionViewerActivity.class)));
+
         // Add calibration button listener
         if (btnCalibrate != null) {
             btnCalibrate.setOnClickListener(v -> {
@@ -112,6 +118,13 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                 Toast.makeText(this, "Gyroscope not available on this device", Toast.LENGTH_LONG).show();
             }
         }
+
+        rotationProcessor = new RotationVectorProcessor();
+        gyroProcessor = new GyroAngleProcessor(rotationProcessor, logger, this);
+        sensorBus = new SensorEventBus();
+        sensorBus.register(rotationProcessor);
+        sensorBus.register(gyroProcessor);
+        sensorBus.start();
     }
 
     private void startCalibration() {
@@ -126,13 +139,11 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         }
 
         isCalibrating = true;
-        calibrationSamples = 0;
-        calibrationSum = 0.0f;
-        yawCalibrationSum = 0.0f;
+        gyroProcessor.startCalibration();
 
         // Register sensor listener if not already registered
-        sensorManager.registerListener(this, gyroscope, SensorManager.SENSOR_DELAY_GAME);
-        sensorManager.registerListener(this, rotation, SensorManager.SENSOR_DELAY_GAME);
+        sensorManager.registerListener(sensorBus, gyroscope, SensorManager.SENSOR_DELAY_GAME);
+        sensorManager.registerListener(sensorBus, rotation, SensorManager.SENSOR_DELAY_GAME);
 
         // Update UI
         if (tvCalibrationStatus != null) {
@@ -147,9 +158,8 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         }
     }
 
-    private void finishCalibration() {
-        baselineNoise = Math.abs(calibrationSum) / CALIBRATION_SAMPLE_COUNT;
-        baselineYaw = Math.abs(yawCalibrationSum) / CALIBRATION_SAMPLE_COUNT;
+    private void finishCalibration(float baselineNoise, float baselineYaw) {
+        this.baselineNoise = baselineNoise;
         isCalibrating = false;
 
         // Update UI
@@ -169,10 +179,37 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 
         // Unregister sensor if not recording
         if (!isRecording) {
-            sensorManager.unregisterListener(this);
+            sensorManager.unregisterListener(sensorBus);
         }
     }
 
+    // ---------------------------------------------------------
+    // GyroAngleProcessor callbacks (processor thread)
+    // ---------------------------------------------------------
+
+    @Override
+    public void onCalibrationProgress(int samples, int total) {
+        runOnUiThread(() -> {
+            if (tvCalibrationStatus != null && isCalibrating) {
+                tvCalibrationStatus.setText(String.format("Calibrating... %d/%d samples", samples, total));
+            }
+        });
+    }
+
+    @Override
+    public void onCalibrationFinished(float baselineNoise, float baselineYaw) {
+        runOnUiThread(() -> finishCalibration(baselineNoise, baselineYaw));
+    }
+
+    @Override
+    public void onAngleUpdate(float relativeAngle, float calibratedYaw) {
+        runOnUiThread(() -> {
+            if (isRecording) {
+                tvSensorData.setText(String.format("RAngle: %.4f° | Yaw: %.2f°", relativeAngle, calibratedYaw));
+            }
+        });
+    }
+
     private void toggleSession() {
         if (isRecording) {
             stopExperiment();
@@ -204,28 +241,51 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         }
 
         try {
+            if (cbSyncLater.isChecked()) {
+                logger.setUploadMode(MovementLogger.UploadMode.DEFERRED);
+            } else if (cbBoutsOnly.isChecked()) {
+                logger.setUploadMode(MovementLogger.UploadMode.BOUTS_ONLY);
+            } else {
+                logger.setUploadMode(MovementLogger.UploadMode.FULL);
+            }
+
+            // Optional live feed to a dashboard on the local network; parsed
+            // first so a bad target is reported before anything starts
+            String liveTarget = etLiveTarget.getText().toString().trim();
+            LiveStreamSink sink = liveTarget.isEmpty() ? null : LiveStreamSink.forTarget(liveTarget);
+
             // Pass the context, the subject name (code), and the session ID
             logger.startSession(this, code, currentSessionId);
+            droppedAtSessionStart = sensorBus.getDroppedCount();
 
             if (gyroscope != null) {
-                sensorManager.registerListener(this, gyroscope, SensorManager.SENSOR_DELAY_GAME);
+                sensorManager.registerListener(sensorBus, gyroscope, SensorManager.SENSOR_DELAY_GAME);
             } else {
                 Toast.makeText(this, "Gyroscope not available", Toast.LENGTH_SHORT).show();
                 return;
             }
 
             if (rotation != null) {
-                sensorManager.registerListener(this, rotation, SensorManager.SENSOR_DELAY_GAME);
+                sensorManager.registerListener(sensorBus, rotation, SensorManager.SENSOR_DELAY_GAME);
             } else {
                 Toast.makeText(this, "Rotation Vector not available", Toast.LENGTH_SHORT).show();
             }
 
+            if (sink != null) {
+                liveStream = sink;
+                liveStream.start();
+                logger.setLiveStream(liveStream);
+            }
+
+            gyroProcessor.startRecording(currentSessionId, code);
+
             // UI Updates
             isRecording = true;
-            cumulativeAngle = 0.0f; // Reset cumulative angle for new session
-            lastTimestamp = 0; // Reset timestamp for angle calculation
             etExperimenterCode.setEnabled(false);
             etSessionId.setEnabled(false);
+            cbBoutsOnly.setEnabled(false);
+            cbSyncLater.setEnabled(false);
+            etLiveTarget.setEnabled(false);
             btnToggleSession.setText("STOP SESSION");
             btnToggleSession.setBackgroundColor(Color.RED);
             tvStatus.setText("Recording... (Session: " + currentSessionId + ")");
@@ -235,26 +295,41 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
             }
 
         } catch (Exception e) {
+            closeLiveStream();
             Toast.makeText(this, "Error starting: " + e.getMessage(), Toast.LENGTH_SHORT).show();
             e.printStackTrace();
         }
     }
 
     private void stopExperiment() {
-        // Stop Logger
+        // Stop new events, let the processors log what is still queued, then stop Logger
+        sensorManager.unregisterListener(sensorBus);
+        sensorBus.drain(STOP_DRAIN_TIMEOUT_MS);
+        gyroProcessor.stopRecording();
         logger.stopSession();
+        if (logger.hasUnsyncedData()) {
+            SyncWorker.enqueue(this);
+        }
+        closeLiveStream();
 
-        // Unregister Sensor to save battery
-        sensorManager.unregisterListener(this);
+        // Samples a processor fell too far behind to take are missing from the CSV too
+        long dropped = sensorBus.getDroppedCount() - droppedAtSessionStart;
+        if (dropped > 0) {
+            Log.w(TAG, "Session " + currentSessionId + ": " + dropped + " sensor samples dropped");
+        }
 
         // UI Updates
         isRecording = false;
         etExperimenterCode.setEnabled(true);
         etSessionId.setEnabled(true);
+        cbBoutsOnly.setEnabled(!cbSyncLater.isChecked());
+        cbSyncLater.setEnabled(true);
+        etLiveTarget.setEnabled(true);
         btnToggleSession.setText("START SESSION");
         btnToggleSession.setBackgroundColor(Color.BLUE);
 
-        tvStatus.setText("Saved to: " + logger.getFilePath());
+        tvStatus.setText("Saved to: " + logger.getFilePath()
+                + (dropped > 0 ? "\n" + dropped + " sensor samples dropped (processing fell behind)" : ""));
         tvSensorData.setText("Gyro: 0.00 deg/s");
 
         if (btnCalibrate != null) {
@@ -262,117 +337,14 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         }
     }
 
-    @Override
-    public void onSensorChanged(SensorEvent event) {
-        // Check that the event is from the gyroscope
-        if (event.sensor.getType() == Sensor.TYPE_ROTATION_VECTOR) {
-            float[] rotationMatrix = new float[9];
-            SensorManager.getRotationMatrixFromVector(rotationMatrix, event.values);
-            float[] orientation = new float[3];
-            SensorManager.getOrientation(rotationMatrix, orientation);
-            pitch = (float) Math.toDegrees(orientation[1]);
-            roll = (float) Math.toDegrees(orientation[2]);
-            yaw = (float) Math.toDegrees(orientation[0]);
-            Log.println(Log.DEBUG, "ROTATION", "Pitch: " + pitch + " Roll: " + roll + " Yaw: " + yaw);
-        } else if (event.sensor.getType() == Sensor.TYPE_GYROSCOPE) {
-            float x = event.values[0];
-            float y = event.values[1];
-            float z = event.values[2];
-
-            // Log.println(Log.DEBUG, "GYRO", "X: " + x + " Y: " + y + " Z: " + z);
-            // Log.println(Log.DEBUG, "GYROZ", " Z: " + z);
-
-            // Track Z-axis rotation (can be positive or negative for direction)
-            // Convert from radians/sec to degrees/sec
-            float rawDelta = (float) Math.toDegrees(z);
-
-            // Log.println(Log.DEBUG, "GYROZ", " Z: " + Math.toDegrees(z));
-            // Log.println(Log.DEBUG, "GYROX", " X: " + Math.toDegrees(x));
-
-            // Handle Calibration Phase
-            if (isCalibrating) {
-                calibrationSum += Math.abs(rawDelta);
-                yawCalibrationSum += Math.abs(yaw);
-                calibrationSamples++;
-
-                // Update progress
-                if (tvCalibrationStatus != null) {
-                    tvCalibrationStatus.setText(String.format("Calibrating... %d/%d samples",
-                            calibrationSamples, CALIBRATION_SAMPLE_COUNT));
-                }
-
-                if (calibrationSamples >= CALIBRATION_SAMPLE_COUNT) {
-                    finishCalibration();
-                }
-                return;
-            }
-
-            // If not recording, just return (but don't show data)
-            if (!isRecording)
-                return;
-
-            // Calculate time delta in seconds
-            long currentTimestamp = event.timestamp;
-            float deltaSeconds = 0.0f;
-            if (lastTimestamp != 0) {
-                deltaSeconds = (currentTimestamp - lastTimestamp) / 1_000_000_000.0f; // Convert nanoseconds to seconds
-            }
-            lastTimestamp = currentTimestamp;
-
-            // Subtract baseline offset from calibration
-            float magnitude = Math.max(0.0f, Math.abs(rawDelta) - baselineNoise);
-            float delta = Math.copySign(magnitude, rawDelta);
-
-            // Apply threshold to filter noise while preserving direction
-            if (Math.abs(delta) < Math.abs(MOVEMENT_THRESHOLD)) {
-                delta = 0.0f;
-            }
-
-            // Calculate angle in degrees by multiplying magnitude delta with delta seconds
-            float angleInDegrees = delta * deltaSeconds;
-
-            // Accumulate the angle to get total rotation from session start
-            cumulativeAngle += angleInDegrees;
-            relativeAngle += angleInDegrees;
-            if (angleInDegrees == 0.0f) {
-                relativeAngle = 0.0f;
-            }
-
-            Log.println(Log.DEBUG, "ANGLE",
-                    "Incremental Angle: " + angleInDegrees + " | Cumulative: " + cumulativeAngle);
-            Log.println(Log.DEBUG, "RELATIVE ANGLE",
-                    "Relative Angle: " + relativeAngle);
-
-            // Update the UI
-            // tvSensorData.setText(String.format("Gyro Delta: %.2f deg/s (Raw: %.2f) |
-            // Angle: %.4f°", delta, rawDelta,
-            // angleInDegrees));
-            // tvSensorData.setText(String.format("Gyro: %.2f deg/s | Cumulative: %.2f° |
-            // Inc: %.4f°", delta,
-            // cumulativeAngle, angleInDegrees));
-
-            tvSensorData.setText(String.format("RAngle: %.4f°", relativeAngle));
-            // Apply yaw calibration (subtract baseline)
-            float calibratedYaw = Math.abs(Math.abs(yaw) - Math.abs(baselineYaw));
-            calibratedYaw = Math.copySign(calibratedYaw, yaw);
-            tvSensorData.append(String.format(" | Yaw: %.2f°", calibratedYaw));
-
-            // Log the movement
-            String expCode = etExperimenterCode.getText().toString();
-            logger.logMovement(currentSessionId, expCode, delta, rawDelta, angleInDegrees, cumulativeAngle,
-                    relativeAngle, pitch, roll,
-                    calibratedYaw,
-                    yaw);
-
-            lastLoggedDelta = delta;
+    private void closeLiveStream() {
+        if (liveStream != null) {
+            logger.setLiveStream(null);
+            liveStream.close();
+            liveStream = null;
         }
     }
 
-    @Override
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {
-        // Not used, but you could log accuracy changes if needed
-    }
-
     @Override
     protected void onResume() {
         super.onResume();
@@ -385,7 +357,7 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         super.onPause();
         // Only unregister if not recording and not calibrating
         if (!isRecording && !isCalibrating) {
-            sensorManager.unregisterListener(this);
+            sensorManager.unregisterListener(sensorBus);
         }
     }
 
@@ -396,6 +368,7 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         if (isRecording) {
             stopExperiment();
         }
-        sensorManager.unregisterListener(this);
+        sensorManager.unregisterListener(sensorBus);
+        sensorBus.stop();
     }
 }
\ No newline at end of file
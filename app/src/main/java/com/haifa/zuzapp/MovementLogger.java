@@ -12,31 +12,104 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
-
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Writes processed samples to the session CSV and uploads them to Supabase.
+ * Public methods are synchronized: samples arrive on the gyro processor
+ * thread while sessions are started and stopped from the UI.
+ */
 public class MovementLogger {
 
     private static final String TAG = "MovementLogger";
-    private static final String CSV_HEADER = "SessionID,ExperimenterCode,Timestamp,ElapsedTimeMs,Magnitude,RawDelta,AngleInDegrees,CumulativeAngle,RelativeAngle,Pitch,Roll,CalibratedYaw,RawYaw\n";
-    private static final int BATCH_SIZE = 20;
+    private static final String CSV_HEADER = "SessionID,ExperimenterCode,Timestamp,ElapsedTimeMs,Magnitude,RawDelta,AngleInDegrees,CumulativeAngle,RelativeAngle,Pitch,Roll,CalibratedYaw,RawYaw,ElapsedTimeNs,Seq\n";
+
+    /**
+     * What is sent to Supabase while recording; the local CSV always gets every sample
+     */
+    public enum UploadMode {
+        // Every sample to movement_records
+        FULL,
+        // One summary row per movement bout to movement_bouts (low bandwidth)
+        BOUTS_ONLY,
+        // Nothing while recording (radio idle); BacklogSync uploads the CSV later
+        DEFERRED
+    }
 
     private File currentLogFile;
     private FileWriter writer;
     private long sessionStartTime;
 
+    // Sensor-clock timebase for the current session (anchored at startSession)
+    private SessionClock sessionClock;
+    private final TimeOfDayFormatter timeFormatter = new TimeOfDayFormatter();
+
+    // CSV row assembled in place and written with a single call per sample
+    private final StringBuilder csvRow = new StringBuilder(256);
+    private char[] csvChars = new char[256];
+
+    // Downsampled tiers next to the CSV for fast session playback
+    private SummaryPyramid summaryPyramid;
+
+    // Optional live feed to a local dashboard (null when off)
+    private LiveStreamSink liveStream;
+
     // Supabase
     private SupabaseClient supabaseClient;
     private List<JSONObject> supabaseBuffer;
 
+    // Per-session sample sequence number (first sample is 1); makes uploads idempotent
+    private long nextSeq;
+    private long bufferFirstSeq;
+    private long bufferLastSeq;
+
+    private UploadMode uploadMode = UploadMode.FULL;
+    // Mode of the session in progress (uploadMode as of startSession)
+    private UploadMode sessionUploadMode = UploadMode.FULL;
+    private BoutSegmenter boutSegmenter;
+
+    // Upload progress of the current (or last) session, for BacklogSync
+    private SessionSyncState syncState;
+
     // Session tracking
     private String currentSessionId;
     private String currentExperimenterCode;
+    // Random per recording, so a Session ID typed twice does not collide on seq
+    private String currentRecordingId;
 
     public MovementLogger() {
         // Initialize Supabase
-        supabaseClient = new SupabaseClient();
+        this(new SupabaseClient());
+    }
+
+    public MovementLogger(SupabaseClient supabaseClient) {
+        this.supabaseClient = supabaseClient;
         supabaseBuffer = new ArrayList<>();
     }
 
+    /**
+     * Select what to upload; takes effect at the next startSession
+     */
+    public synchronized void setUploadMode(UploadMode uploadMode) {
+        this.uploadMode = uploadMode;
+    }
+
+    public synchronized UploadMode getUploadMode() {
+        return uploadMode;
+    }
+
+    /**
+     * Also publish every processed sample to a live dashboard (null to stop).
+     * The caller owns the sink and closes it.
+     */
+    public synchronized void setLiveStream(LiveStreamSink liveStream) {
+        this.liveStream = liveStream;
+        if (liveStream != null && sessionClock != null) {
+            liveStream.beginSession(sessionStartTime);
+        }
+    }
+
     /**
      * Starts the session and creates the CSV file with the specific naming
      * convention:
@@ -45,29 +118,69 @@ public class MovementLogger {
      * ALSO logs session START to Supabase
      */
     public void startSession(Context context, String subjectName, String sessionId) throws IOException {
+        startSession(context.getFilesDir(), subjectName, sessionId, SessionClock.start());
+    }
+
+    /**
+     * Starts the session in the given directory, with an explicit timebase
+     * (replayed or synthetic sensor timestamps in tests)
+     */
+    public synchronized void startSession(File directory, String subjectName, String sessionId, SessionClock clock)
+            throws IOException {
         String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
 
         // Store current session info
         this.currentSessionId = sessionId;
+        this.currentRecordingId = UUID.randomUUID().toString();
         this.currentExperimenterCode = subjectName;
 
         // Construct the filename: Subject__Session__Timestamp.csv
-        String fileName = subjectName + "__" + sessionId + "__" + timeStamp + ".csv";
+        String baseName = subjectName + "__" + sessionId + "__" + timeStamp;
+        String fileName = baseName + ".csv";
 
-        File directory = context.getFilesDir();
         currentLogFile = new File(directory, fileName);
 
         writer = new FileWriter(currentLogFile, true);
         writer.append(CSV_HEADER);
         writer.flush();
 
-        sessionStartTime = System.currentTimeMillis();
+        sessionClock = clock;
+        sessionStartTime = sessionClock.getStartWallMillis();
         supabaseBuffer.clear();
+        if (liveStream != null) {
+            liveStream.beginSession(sessionStartTime);
+        }
+
+        try {
+            summaryPyramid = new SummaryPyramid(directory, baseName, sessionStartTime);
+        } catch (IOException e) {
+            Log.e(TAG, "Error creating session summary files", e);
+            summaryPyramid = null;
+        }
+        nextSeq = 1;
+        sessionUploadMode = uploadMode;
+        boutSegmenter = new BoutSegmenter();
+
+        syncState = new SessionSyncState(SessionSyncState.fileFor(directory, baseName));
+        syncState.sessionId = sessionId;
+        syncState.experimenterCode = subjectName;
+        syncState.recordingId = currentRecordingId;
+        syncState.csvFileName = fileName;
+        syncState.uploadMode = sessionUploadMode.name();
+        syncState.startTime = timeStamp;
+        syncState.startTimeMillis = sessionStartTime;
+        syncState.deviceModel = android.os.Build.MODEL;
+        syncState.androidVersion = android.os.Build.VERSION.RELEASE;
+        syncState.filePath = currentLogFile.getAbsolutePath();
+        syncState.recording = true;
+        saveSyncState(syncState);
 
         // ======================================================
         // LOG SESSION START TO SUPABASE
         // ======================================================
-        logSessionStartToSupabase(subjectName, sessionId, timeStamp);
+        if (sessionUploadMode != UploadMode.DEFERRED) {
+            logSessionStartToSupabase(subjectName, sessionId, timeStamp);
+        }
 
         Log.d(TAG, "Session started. File created: " + currentLogFile.getAbsolutePath());
     }
@@ -80,59 +193,131 @@ public class MovementLogger {
             supabaseClient.insertSessionStart(
                     sessionId,
                     experimenterCode,
+                    currentRecordingId,
                     timestamp,
                     sessionStartTime,
                     android.os.Build.MODEL,
                     android.os.Build.VERSION.RELEASE,
-                    currentLogFile.getAbsolutePath());
+                    currentLogFile.getAbsolutePath(),
+                    sessionCallTracker(syncState));
             Log.d(TAG, "Session START sent to Supabase");
         } catch (Exception e) {
             Log.e(TAG, "Exception in logSessionStartToSupabase", e);
         }
     }
 
-    public void logMovement(String sessionId, String experimenterCode, float magnitude, float rawDelta,
-            float angleInDegrees, float cumulativeAngle, float relativeAngle, float pitch,
-            float roll, float calibratedYaw, float rawYaw) {
+    /**
+     * Append value the way String.format(Locale.US, "%.4f", value) would.
+     * Values within rounding error of a half-unit tie, and non-finite or very
+     * large values, go through String.format so the output is identical.
+     */
+    static void appendFixed4(StringBuilder out, double value) {
+        double scaled = Math.abs(value) * 10_000.0;
+        double floor = Math.floor(scaled);
+        double fraction = scaled - floor;
+        if (!(scaled < 1e15) || Math.abs(fraction - 0.5) < 1e-6) {
+            out.append(String.format(Locale.US, "%.4f", value));
+            return;
+        }
 
-        long currentTime = System.currentTimeMillis();
-        long elapsedTime = currentTime - sessionStartTime;
-        String timeString = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US).format(new Date(currentTime));
+        long units = (long) floor + (fraction > 0.5 ? 1 : 0);
+        // %.4f keeps the sign of negative values that round to zero
+        if (value < 0 || (value == 0 && 1 / value < 0)) {
+            out.append('-');
+        }
+        out.append(units / 10_000).append('.');
+        long decimals = units % 10_000;
+        for (long digit = 1_000; digit > decimals && digit > 1; digit /= 10) {
+            out.append('0');
+        }
+        out.append(decimals);
+    }
+
+    /**
+     * Log one processed sample.
+     *
+     * @param eventTimestampNanos SensorEvent.timestamp of the sample; elapsed and
+     *                            wall times are derived from it via the session clock
+     */
+    public synchronized void logMovement(long eventTimestampNanos, String sessionId, String experimenterCode,
+            float magnitude, float rawDelta, float angleInDegrees, float cumulativeAngle,
+            float relativeAngle, float pitch, float roll, float calibratedYaw, float rawYaw) {
+
+        // Late sample from a processor racing stopSession
+        if (sessionClock == null) return;
+
+        long elapsedNanos = sessionClock.elapsedNanos(eventTimestampNanos);
+        long elapsedTime = elapsedNanos / 1_000_000L;
+        long wallMillis = sessionClock.wallMillis(eventTimestampNanos);
+        long seq = nextSeq++;
 
         // ---------------------------------------------------------
         // 1. Write to local CSV file (ALWAYS write, even if 0.0)
         // ---------------------------------------------------------
         if (writer != null) {
-            String entry = String.format(Locale.US, "%s,%s,%s,%d,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f\n",
-                    sessionId,
-                    experimenterCode,
-                    timeString,
-                    elapsedTime,
-                    magnitude,
-                    rawDelta,
-                    angleInDegrees,
-                    cumulativeAngle,
-                    relativeAngle,
-                    pitch,
-                    roll,
-                    calibratedYaw,
-                    rawYaw);
+            // Same columns as "%s,%s,%s,%d,%.4f x9,%d,%d" without per-sample formatting
+            StringBuilder row = csvRow;
+            row.setLength(0);
+            row.append(sessionId).append(',').append(experimenterCode).append(',');
+            timeFormatter.formatTo(wallMillis, row);
+            row.append(',').append(elapsedTime);
+            appendFixed4(row.append(','), magnitude);
+            appendFixed4(row.append(','), rawDelta);
+            appendFixed4(row.append(','), angleInDegrees);
+            appendFixed4(row.append(','), cumulativeAngle);
+            appendFixed4(row.append(','), relativeAngle);
+            appendFixed4(row.append(','), pitch);
+            appendFixed4(row.append(','), roll);
+            appendFixed4(row.append(','), calibratedYaw);
+            appendFixed4(row.append(','), rawYaw);
+            row.append(',').append(elapsedNanos).append(',').append(seq).append('\n');
+
+            int length = row.length();
+            if (csvChars.length < length) {
+                csvChars = new char[length * 2];
+            }
+            row.getChars(0, length, csvChars, 0);
             try {
-                writer.append(entry);
+                writer.write(csvChars, 0, length);
                 writer.flush();
             } catch (IOException e) {
                 Log.e(TAG, "Error writing to CSV log", e);
             }
         }
 
+        if (liveStream != null) {
+            liveStream.publish(elapsedNanos, magnitude, angleInDegrees, cumulativeAngle, pitch, roll, calibratedYaw);
+        }
+
+        if (summaryPyramid != null) {
+            try {
+                summaryPyramid.add(elapsedNanos, magnitude, cumulativeAngle, calibratedYaw);
+            } catch (IOException e) {
+                Log.e(TAG, "Error writing session summary", e);
+            }
+        }
+
         // ---------------------------------------------------------
         // 2. Upload to Supabase
         // ---------------------------------------------------------
+        if (sessionUploadMode == UploadMode.DEFERRED) {
+            return;
+        }
+        if (sessionUploadMode == UploadMode.BOUTS_ONLY) {
+            BoutSegmenter.Bout bout = boutSegmenter.update(elapsedNanos, magnitude, angleInDegrees, pitch, roll);
+            if (bout != null) {
+                uploadBout(bout);
+            }
+            return;
+        }
+
         try {
             JSONObject supabaseRecord = new JSONObject();
             supabaseRecord.put("session_id", sessionId);
             supabaseRecord.put("experimenter_code", experimenterCode);
-            supabaseRecord.put("timestamp", timeString);
+            supabaseRecord.put("recording_id", currentRecordingId);
+            supabaseRecord.put("seq", seq);
+            supabaseRecord.put("timestamp", timeFormatter.format(wallMillis));
             supabaseRecord.put("elapsed_time_ms", elapsedTime);
             supabaseRecord.put("magnitude", magnitude);
             supabaseRecord.put("raw_delta", rawDelta);
@@ -144,10 +329,14 @@ public class MovementLogger {
             supabaseRecord.put("calibrated_yaw", calibratedYaw);
             supabaseRecord.put("yaw", rawYaw);
 
+            if (supabaseBuffer.isEmpty()) {
+                bufferFirstSeq = seq;
+            }
+            bufferLastSeq = seq;
             supabaseBuffer.add(supabaseRecord);
 
-            // Upload batch if buffer reached threshold
-            if (supabaseBuffer.size() >= BATCH_SIZE) {
+            // Upload batch if buffer reached the uploader's current batch size
+            if (supabaseBuffer.size() >= supabaseClient.getRecommendedBatchSize()) {
                 uploadSupabaseBuffer();
             }
         } catch (Exception e) {
@@ -165,7 +354,8 @@ public class MovementLogger {
                 recordsArray.put(record);
             }
 
-            supabaseClient.insertMovementRecords(recordsArray);
+            supabaseClient.upsertMovementRecords(currentSessionId, currentExperimenterCode,
+                    bufferFirstSeq, bufferLastSeq, recordsArray);
             supabaseBuffer.clear();
 
             Log.d(TAG, "Supabase batch uploaded");
@@ -174,22 +364,55 @@ public class MovementLogger {
         }
     }
 
+    /**
+     * Upload one movement bout summary to the movement_bouts table
+     */
+    private void uploadBout(BoutSegmenter.Bout bout) {
+        try {
+            long startEventNanos = sessionClock.getStartEventNanos();
+            JSONObject record = new JSONObject();
+            record.put("session_id", currentSessionId);
+            record.put("experimenter_code", currentExperimenterCode);
+            record.put("recording_id", currentRecordingId);
+            record.put("bout_index", bout.index);
+            record.put("start_time", timeFormatter.format(sessionClock.wallMillis(startEventNanos + bout.startNanos)));
+            record.put("end_time", timeFormatter.format(sessionClock.wallMillis(startEventNanos + bout.endNanos)));
+            record.put("start_elapsed_ms", bout.startNanos / 1_000_000L);
+            record.put("end_elapsed_ms", bout.endNanos / 1_000_000L);
+            record.put("duration_ms", bout.getDurationNanos() / 1_000_000L);
+            record.put("net_rotation", bout.netRotation);
+            record.put("absolute_rotation", bout.absoluteRotation);
+            record.put("peak_velocity", bout.peakVelocity);
+            record.put("direction", bout.getDirection());
+            record.put("pitch_min", bout.pitchMin);
+            record.put("pitch_max", bout.pitchMax);
+            record.put("roll_min", bout.rollMin);
+            record.put("roll_max", bout.rollMax);
+            record.put("sample_count", bout.sampleCount);
+
+            supabaseClient.upsertMovementBouts(currentSessionId, currentExperimenterCode,
+                    bout.index, bout.index, new JSONArray().put(record));
+            Log.d(TAG, "Bout " + bout.index + " queued: " + bout.netRotation + " deg");
+        } catch (Exception e) {
+            Log.e(TAG, "Error preparing bout record", e);
+        }
+    }
+
     /**
      * Log session END event to Supabase
      */
-    private void logSessionEndToSupabase() {
+    private void logSessionEndToSupabase(long sessionEndTime, String endTimeStamp) {
         try {
-            long sessionEndTime = System.currentTimeMillis();
             long sessionDuration = sessionEndTime - sessionStartTime;
-            String endTimeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US)
-                    .format(new Date(sessionEndTime));
 
             supabaseClient.updateSessionEnd(
                     currentSessionId,
                     currentExperimenterCode, // Pass experimenter code too
+                    currentRecordingId,
                     endTimeStamp,
                     sessionEndTime,
-                    sessionDuration);
+                    sessionDuration,
+                    sessionCallTracker(syncState));
 
             Log.d(TAG, "Session END sent to Supabase");
         } catch (Exception e) {
@@ -197,31 +420,119 @@ public class MovementLogger {
         }
     }
 
-    public void stopSession() {
+    public synchronized void stopSession() {
         try {
+            long sessionEndTime = System.currentTimeMillis();
+            String endTimeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US)
+                    .format(new Date(sessionEndTime));
+
             // ======================================================
             // LOG SESSION END TO SUPABASE
             // ======================================================
-            logSessionEndToSupabase();
+            if (sessionUploadMode != UploadMode.DEFERRED) {
+                logSessionEndToSupabase(sessionEndTime, endTimeStamp);
+            }
+
+            // Close a bout still in progress
+            if (sessionUploadMode == UploadMode.BOUTS_ONLY && boutSegmenter != null) {
+                BoutSegmenter.Bout bout = boutSegmenter.flush();
+                if (bout != null) {
+                    uploadBout(bout);
+                }
+            }
 
             // Upload any remaining buffered logs before stopping
             if (!supabaseBuffer.isEmpty()) {
                 uploadSupabaseBuffer();
             }
 
+            // No more samples for this session
+            sessionClock = null;
+
+            if (summaryPyramid != null) {
+                try {
+                    summaryPyramid.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Error closing session summary", e);
+                }
+                summaryPyramid = null;
+            }
+
             // Close the CSV file writer
             if (writer != null) {
                 writer.close();
                 writer = null;
             }
 
-            Log.d(TAG, "Session stopped.");
+            long acked = supabaseClient.getAckedHighWaterMark(currentSessionId, currentExperimenterCode);
+            // Anything acked after this is resent by BacklogSync, so the tracker is no longer needed
+            supabaseClient.releaseSession(currentSessionId, currentExperimenterCode);
+            if (syncState != null) {
+                syncState.recording = false;
+                syncState.endTime = endTimeStamp;
+                syncState.endTimeMillis = sessionEndTime;
+                syncState.durationMs = sessionEndTime - sessionStartTime;
+                syncState.lastSeq = nextSeq - 1;
+                // Batches still in flight are resent by BacklogSync; the server ignores the overlap
+                syncState.syncedSeq = sessionUploadMode == UploadMode.FULL ? acked : 0;
+                // sessionRowSynced is set by sessionCallTracker once the start and end calls succeed
+                saveSyncState(syncState);
+            }
+
+            Log.d(TAG, "Session stopped. " + (nextSeq - 1) + " samples, acked through seq " + acked);
         } catch (IOException e) {
             Log.e(TAG, "Error closing log file", e);
         }
     }
 
-    public String getFilePath() {
+    private void saveSyncState(SessionSyncState state) {
+        try {
+            if (state.isComplete()) {
+                state.delete();
+            } else {
+                state.save();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving sync state", e);
+        }
+    }
+
+    /**
+     * Counts a live session call for state; once the start and end calls have
+     * both succeeded the session row is on the server, and the sync file is
+     * updated (or removed if nothing else is pending)
+     */
+    private synchronized Consumer<Boolean> sessionCallTracker(SessionSyncState state) {
+        if (state == null) return null;
+        state.sessionCallsInFlight++;
+        return stored -> {
+            synchronized (MovementLogger.this) {
+                state.sessionCallsInFlight--;
+                if (!stored) {
+                    state.sessionCallFailed = true;
+                }
+                if (state.recording || state.sessionCallsInFlight > 0 || state.sessionCallFailed) return;
+                state.sessionRowSynced = true;
+                // Already taken over (or finished) by BacklogSync
+                if (!state.getFile().exists()) return;
+                saveSyncState(state);
+            }
+        };
+    }
+
+    /**
+     * Whether the last session left anything for BacklogSync to upload.
+     * Session calls still in flight are not counted: if one fails, the sync
+     * file stays and the periodic SyncWorker run sends the row.
+     */
+    public synchronized boolean hasUnsyncedData() {
+        if (syncState == null || syncState.isComplete()) return false;
+        boolean rowPending = !syncState.sessionRowSynced
+                && (syncState.sessionCallsInFlight == 0 || syncState.sessionCallFailed);
+        return syncState.hasRecordsPending() || rowPending;
+    }
+
+    public synchronized String getFilePath() {
         return currentLogFile != null ? currentLogFile.getAbsolutePath() : "Unknown";
     }
 
@@ -0,0 +1,55 @@
+package com.haifa.zuzapp;
+
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+import android.util.Log;
+
+/**
+ * Turns rotation vector samples into pitch/roll/yaw (degrees) and keeps the
+ * latest orientation for other processors to read
+ */
+public class RotationVectorProcessor implements SensorProcessor {
+
+    // For devices that report only x, y, z (scalar part is then derived)
+    private final float[] vector3 = new float[3];
+    private final float[] rotationMatrix = new float[9];
+    private final float[] orientation = new float[3];
+
+    // Latest orientation, guarded by this
+    private float pitch;
+    private float roll;
+    private float yaw;
+
+    @Override
+    public int getSensorType() {
+        return Sensor.TYPE_ROTATION_VECTOR;
+    }
+
+    @Override
+    public void process(SensorSample sample) {
+        float[] values = sample.values;
+        if (sample.valueCount < 4) {
+            System.arraycopy(sample.values, 0, vector3, 0, 3);
+            values = vector3;
+        }
+        // Entries past the scalar component (heading accuracy, padding) are ignored
+        SensorManager.getRotationMatrixFromVector(rotationMatrix, values);
+        SensorManager.getOrientation(rotationMatrix, orientation);
+
+        synchronized (this) {
+            pitch = (float) Math.toDegrees(orientation[1]);
+            roll = (float) Math.toDegrees(orientation[2]);
+            yaw = (float) Math.toDegrees(orientation[0]);
+        }
+        Log.println(Log.DEBUG, "ROTATION", "Pitch: " + pitch + " Roll: " + roll + " Yaw: " + yaw);
+    }
+
+    /**
+     * Copy the latest pitch, roll and yaw (degrees) into out[0..2]
+     */
+    public synchronized void getOrientation(float[] out) {
+        out[0] = pitch;
+        out[1] = roll;
+        out[2] = yaw;
+    }
+}
@@ -0,0 +1,190 @@
+package com.haifa.zuzapp;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * SensorEventListener that only copies primitive event data into the
+ * preallocated queue of every processor subscribed to the event's sensor
+ * type; processors run on their own worker threads.
+ *
+ * The callback does a fixed-size array lookup by type and one copy per
+ * subscriber, so registering processors for other sensors (accelerometer,
+ * magnetometer, ...) does not add to the cost of gyroscope events.
+ */
+public class SensorEventBus implements SensorEventListener {
+
+    private static final String TAG = "SensorEventBus";
+
+    // Standard Sensor.TYPE_* values are small; vendor types are not supported
+    private static final int MAX_SENSOR_TYPE = 64;
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    private static final long WORKER_POLL_NANOS = 100_000_000L;
+    private static final long DRAIN_POLL_NANOS = 1_000_000L;
+
+    private static class Subscription {
+        final SensorProcessor processor;
+        final SensorSampleQueue queue;
+        Thread worker;
+        // Samples taken from the queue and fully processed
+        volatile long processedCount;
+
+        Subscription(SensorProcessor processor, int capacity) {
+            this.processor = processor;
+            this.queue = new SensorSampleQueue(capacity);
+        }
+    }
+
+    // Copy-on-write: read by the sensor thread without locking
+    private volatile Subscription[][] subscriptionsByType = new Subscription[MAX_SENSOR_TYPE][];
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private volatile boolean running;
+
+    public void register(SensorProcessor processor) {
+        register(processor, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public synchronized void register(SensorProcessor processor, int queueCapacity) {
+        int type = processor.getSensorType();
+        if (type < 0 || type >= MAX_SENSOR_TYPE) {
+            throw new IllegalArgumentException("Unsupported sensor type " + type);
+        }
+        Subscription subscription = new Subscription(processor, queueCapacity);
+        subscriptions.add(subscription);
+
+        Subscription[][] updated = subscriptionsByType.clone();
+        Subscription[] existing = updated[type];
+        if (existing == null) {
+            updated[type] = new Subscription[]{subscription};
+        } else {
+            Subscription[] grown = Arrays.copyOf(existing, existing.length + 1);
+            grown[existing.length] = subscription;
+            updated[type] = grown;
+        }
+        subscriptionsByType = updated;
+
+        if (running) {
+            startWorker(subscription);
+        }
+    }
+
+    /**
+     * Start one worker thread per registered processor
+     */
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        for (Subscription subscription : subscriptions) {
+            startWorker(subscription);
+        }
+    }
+
+    /**
+     * Stop the workers; samples still queued are discarded (see drain)
+     */
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        for (Subscription subscription : subscriptions) {
+            if (subscription.worker != null) {
+                subscription.worker.interrupt();
+                try {
+                    subscription.worker.join(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                subscription.worker = null;
+            }
+        }
+    }
+
+    private void startWorker(Subscription subscription) {
+        Thread worker = new Thread(() -> {
+            SensorSample sample = new SensorSample();
+            while (running) {
+                if (subscription.queue.take(sample, WORKER_POLL_NANOS)) {
+                    try {
+                        subscription.processor.process(sample);
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Processor failed on sample", e);
+                    }
+                    subscription.processedCount++;
+                }
+            }
+        }, "sensor-" + subscription.processor.getClass().getSimpleName());
+        worker.setPriority(Thread.MAX_PRIORITY);
+        subscription.worker = worker;
+        worker.start();
+    }
+
+    /**
+     * Wait until every sample queued so far has been processed, so a session
+     * can be stopped without losing its tail. Unregister the bus from the
+     * SensorManager first, or the wait races new events.
+     *
+     * @return false if the timeout passed first
+     */
+    public boolean drain(long timeoutMillis) {
+        Subscription[] snapshot;
+        synchronized (this) {
+            if (!running) return true;
+            snapshot = subscriptions.toArray(new Subscription[0]);
+        }
+        long[] targets = new long[snapshot.length];
+        for (int i = 0; i < snapshot.length; i++) {
+            targets[i] = snapshot[i].queue.getOfferedCount();
+        }
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        for (int i = 0; i < snapshot.length; i++) {
+            while (snapshot[i].processedCount < targets[i]) {
+                if (System.nanoTime() - deadline > 0) {
+                    Log.w(TAG, "Timed out draining " + snapshot[i].processor.getClass().getSimpleName());
+                    return false;
+                }
+                LockSupport.parkNanos(DRAIN_POLL_NANOS);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        dispatch(event.sensor.getType(), event.timestamp, event.values);
+    }
+
+    /**
+     * Copy one event into the queue of every subscriber to its type
+     */
+    void dispatch(int type, long timestamp, float[] values) {
+        if (type < 0 || type >= MAX_SENSOR_TYPE) return;
+
+        Subscription[] subscribers = subscriptionsByType[type];
+        if (subscribers == null) return;
+        for (Subscription subscription : subscribers) {
+            subscription.queue.offer(timestamp, values);
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+        // Not used
+    }
+
+    /**
+     * Samples dropped across all queues because a processor fell behind
+     */
+    public synchronized long getDroppedCount() {
+        long dropped = 0;
+        for (Subscription subscription : subscriptions) {
+            dropped += subscription.queue.getDroppedCount();
+        }
+        return dropped;
+    }
+}
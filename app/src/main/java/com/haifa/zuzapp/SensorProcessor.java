@@ -0,0 +1,20 @@
+package com.haifa.zuzapp;
+
+/**
+ * Consumer of one sensor type on the SensorEventBus. Each registered
+ * processor gets its own queue and worker thread, so its cost never lands
+ * on the sensor callback or on other processors.
+ */
+public interface SensorProcessor {
+
+    /**
+     * Sensor.TYPE_* this processor consumes
+     */
+    int getSensorType();
+
+    /**
+     * Handle one sample, on the processor's worker thread. The sample is
+     * reused after return.
+     */
+    void process(SensorSample sample);
+}
@@ -0,0 +1,10 @@
+package com.haifa.zuzapp;
+
+/**
+ * Primitive copy of a SensorEvent (timestamp and values), reused by consumers
+ */
+public class SensorSample {
+    public long timestamp;
+    public final float[] values = new float[SensorSampleQueue.MAX_VALUES];
+    public int valueCount;
+}
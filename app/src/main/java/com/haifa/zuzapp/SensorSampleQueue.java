@@ -0,0 +1,124 @@
+package com.haifa.zuzapp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated single-producer/single-consumer ring of sensor samples.
+ *
+ * The sensor callback (producer) copies the event's timestamp and values
+ * into the next slot without allocating or locking; one worker thread
+ * (consumer) drains it. When full, new samples are dropped and counted
+ * rather than blocking the callback.
+ */
+public class SensorSampleQueue {
+
+    // Enough for gyroscope (3), rotation vector (4-5), accelerometer (3)
+    public static final int MAX_VALUES = 6;
+
+    private final int capacity;
+    private final int mask;
+    private final long[] timestamps;
+    private final float[] values;
+    private final byte[] valueCounts;
+
+    // head: next slot to write (producer), tail: next slot to read (consumer)
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long droppedCount;
+    private volatile Thread waitingConsumer;
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public SensorSampleQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.timestamps = new long[size];
+        this.values = new float[size * MAX_VALUES];
+        this.valueCounts = new byte[size];
+    }
+
+    /**
+     * Producer side: copy one sample in. Returns false if the queue was full.
+     */
+    public boolean offer(long timestamp, float[] sampleValues) {
+        long h = head.get();
+        if (h - tail.get() >= capacity) {
+            droppedCount++;
+            return false;
+        }
+        int slot = (int) (h & mask);
+        int n = Math.min(sampleValues.length, MAX_VALUES);
+        timestamps[slot] = timestamp;
+        System.arraycopy(sampleValues, 0, values, slot * MAX_VALUES, n);
+        valueCounts[slot] = (byte) n;
+        // A full volatile store, not lazySet: it must not be reordered after the
+        // read of waitingConsumer, or a consumer that is just parking could
+        // miss this sample and sleep for its whole timeout
+        head.set(h + 1);
+
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    /**
+     * Consumer side: copy the oldest sample out, or return false if empty
+     */
+    public boolean poll(SensorSample out) {
+        long t = tail.get();
+        if (t >= head.get()) {
+            return false;
+        }
+        int slot = (int) (t & mask);
+        int n = valueCounts[slot];
+        out.timestamp = timestamps[slot];
+        System.arraycopy(values, slot * MAX_VALUES, out.values, 0, n);
+        out.valueCount = n;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Consumer side: wait up to timeoutNanos for a sample
+     */
+    public boolean take(SensorSample out, long timeoutNanos) {
+        if (poll(out)) {
+            return true;
+        }
+        waitingConsumer = Thread.currentThread();
+        try {
+            // Re-check after publishing ourselves so a concurrent offer cannot be missed
+            if (poll(out)) {
+                return true;
+            }
+            LockSupport.parkNanos(this, timeoutNanos);
+            return poll(out);
+        } finally {
+            waitingConsumer = null;
+        }
+    }
+
+    /**
+     * Samples accepted since creation (dropped ones are not counted)
+     */
+    public long getOfferedCount() {
+        return head.get();
+    }
+
+    public int size() {
+        return (int) (head.get() - tail.get());
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+}
@@ -0,0 +1,53 @@
+package com.haifa.zuzapp;
+
+import android.os.SystemClock;
+
+/**
+ * Session timebase.
+ *
+ * Sensor events are stamped in nanoseconds on the elapsed-realtime clock
+ * (SensorEvent.timestamp). The clock anchors that timeline to wall time once,
+ * when the session starts, so every sample can be placed in both without
+ * reading the wall clock again.
+ */
+public class SessionClock {
+
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final long anchorEventNanos;
+    private final long anchorWallMillis;
+
+    public SessionClock(long anchorEventNanos, long anchorWallMillis) {
+        this.anchorEventNanos = anchorEventNanos;
+        this.anchorWallMillis = anchorWallMillis;
+    }
+
+    /**
+     * Anchor a new timebase at the current instant
+     */
+    public static SessionClock start() {
+        return new SessionClock(SystemClock.elapsedRealtimeNanos(), System.currentTimeMillis());
+    }
+
+    public long getStartWallMillis() {
+        return anchorWallMillis;
+    }
+
+    public long getStartEventNanos() {
+        return anchorEventNanos;
+    }
+
+    /**
+     * Nanoseconds between session start and the given event timestamp
+     */
+    public long elapsedNanos(long eventNanos) {
+        return eventNanos - anchorEventNanos;
+    }
+
+    /**
+     * Wall-clock time (epoch millis) of the given event timestamp
+     */
+    public long wallMillis(long eventNanos) {
+        return anchorWallMillis + Math.floorDiv(eventNanos - anchorEventNanos, NANOS_PER_MILLI);
+    }
+}
@@ -0,0 +1,186 @@
+package com.haifa.zuzapp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Upload progress of one session, kept next to its CSV as
+ * Subject__Session__Timestamp.sync until everything is on the server.
+ *
+ * Written by MovementLogger when a session starts (so a crashed recording is
+ * still found) and stops; advanced by BacklogSync after every acknowledged
+ * chunk, so a sync that is interrupted resumes where it left off.
+ */
+public class SessionSyncState {
+
+    public static final String SUFFIX = ".sync";
+
+    private final File file;
+
+    String sessionId;
+    String experimenterCode;
+    // Empty for sync files written before recordings had an id
+    String recordingId;
+    String csvFileName;
+    String uploadMode;
+    String startTime;
+    long startTimeMillis;
+    String deviceModel;
+    String androidVersion;
+    String filePath;
+
+    // Set while the session is being recorded (left set by a crash)
+    boolean recording;
+    // Zero until the session stops
+    String endTime;
+    long endTimeMillis;
+    long durationMs;
+    long lastSeq;
+
+    // Every record up to syncedSeq is on the server
+    long syncedSeq;
+    // Byte offset in the CSV of the row after syncedSeq (0 = not known yet)
+    long csvOffset;
+    boolean sessionRowSynced;
+    // Why the CSV could not be parsed; BacklogSync skips the session while set
+    String quarantined;
+
+    // Live session start/end calls not answered yet, and whether one failed
+    // (kept in memory only, by the MovementLogger recording the session)
+    int sessionCallsInFlight;
+    boolean sessionCallFailed;
+
+    public SessionSyncState(File file) {
+        this.file = file;
+    }
+
+    public static File fileFor(File directory, String baseName) {
+        return new File(directory, baseName + SUFFIX);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public File getCsvFile() {
+        return new File(file.getParentFile(), csvFileName);
+    }
+
+    /**
+     * Records still to send (movement_records are not synced for bout-only sessions)
+     */
+    public boolean hasRecordsPending() {
+        if (MovementLogger.UploadMode.BOUTS_ONLY.name().equals(uploadMode)) return false;
+        return recording || syncedSeq < lastSeq;
+    }
+
+    public boolean isComplete() {
+        return !recording && sessionRowSynced && !hasRecordsPending();
+    }
+
+    /**
+     * Every sync file in the directory (unreadable ones are skipped)
+     */
+    public static List<SessionSyncState> findAll(File directory) {
+        List<SessionSyncState> states = new ArrayList<>();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) return states;
+        for (File f : files) {
+            try {
+                states.add(load(f));
+            } catch (IOException | RuntimeException e) {
+                // Half-written by a crash; the next save replaces it
+            }
+        }
+        states.sort((a, b) -> Long.compare(a.startTimeMillis, b.startTimeMillis));
+        return states;
+    }
+
+    public static SessionSyncState load(File file) throws IOException {
+        Properties p = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            p.load(in);
+        }
+        SessionSyncState s = new SessionSyncState(file);
+        s.sessionId = required(p, "sessionId");
+        s.experimenterCode = required(p, "experimenterCode");
+        s.recordingId = p.getProperty("recordingId", "");
+        s.csvFileName = required(p, "csvFileName");
+        s.uploadMode = p.getProperty("uploadMode", MovementLogger.UploadMode.FULL.name());
+        s.startTime = p.getProperty("startTime");
+        s.startTimeMillis = Long.parseLong(p.getProperty("startTimeMillis", "0"));
+        s.deviceModel = p.getProperty("deviceModel");
+        s.androidVersion = p.getProperty("androidVersion");
+        s.filePath = p.getProperty("filePath");
+        s.recording = Boolean.parseBoolean(p.getProperty("recording", "false"));
+        s.endTime = p.getProperty("endTime");
+        s.endTimeMillis = Long.parseLong(p.getProperty("endTimeMillis", "0"));
+        s.durationMs = Long.parseLong(p.getProperty("durationMs", "0"));
+        s.lastSeq = Long.parseLong(p.getProperty("lastSeq", "0"));
+        s.syncedSeq = Long.parseLong(p.getProperty("syncedSeq", "0"));
+        s.csvOffset = Long.parseLong(p.getProperty("csvOffset", "0"));
+        s.sessionRowSynced = Boolean.parseBoolean(p.getProperty("sessionRowSynced", "false"));
+        s.quarantined = p.getProperty("quarantined");
+        return s;
+    }
+
+    private static String required(Properties p, String key) throws IOException {
+        String value = p.getProperty(key);
+        if (value == null) {
+            throw new IOException("Missing " + key);
+        }
+        return value;
+    }
+
+    /**
+     * Write to a temporary file and rename it over the old one, so a crash
+     * leaves either the previous or the new progress
+     */
+    public void save() throws IOException {
+        Properties p = new Properties();
+        put(p, "sessionId", sessionId);
+        put(p, "experimenterCode", experimenterCode);
+        put(p, "recordingId", recordingId);
+        put(p, "csvFileName", csvFileName);
+        put(p, "uploadMode", uploadMode);
+        put(p, "startTime", startTime);
+        put(p, "startTimeMillis", String.valueOf(startTimeMillis));
+        put(p, "deviceModel", deviceModel);
+        put(p, "androidVersion", androidVersion);
+        put(p, "filePath", filePath);
+        put(p, "recording", String.valueOf(recording));
+        put(p, "endTime", endTime);
+        put(p, "endTimeMillis", String.valueOf(endTimeMillis));
+        put(p, "durationMs", String.valueOf(durationMs));
+        put(p, "lastSeq", String.valueOf(lastSeq));
+        put(p, "syncedSeq", String.valueOf(syncedSeq));
+        put(p, "csvOffset", String.valueOf(csvOffset));
+        put(p, "sessionRowSynced", String.valueOf(sessionRowSynced));
+        put(p, "quarantined", quarantined);
+
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            p.store(out, null);
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    private static void put(Properties p, String key, String value) {
+        if (value != null) {
+            p.setProperty(key, value);
+        }
+    }
+
+    public boolean delete() {
+        return file.delete();
+    }
+}
@@ -0,0 +1,167 @@
+package com.haifa.zuzapp;
+
+import android.os.Bundle;
+import android.util.Log;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.RadioGroup;
+import android.widget.Spinner;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Browse finished (or running) sessions from their summary tiers. Each
+ * viewport change reads only the buckets of the tier that matches the zoom
+ * level, never the CSV.
+ */
+public class SessionViewerActivity extends AppCompatActivity
+        implements SummaryChartView.ViewportListener {
+
+    private static final String TAG = "SessionViewer";
+    private static final String SUMMARY_SUFFIX = ".summary-1s.bin";
+
+    private Spinner spSessions;
+    private SummaryChartView chart;
+    private TextView tvViewerInfo;
+
+    private final List<String> sessionNames = new ArrayList<>();
+    private final SummaryReader[] readers = new SummaryReader[SummaryPyramid.TIER_NANOS.length];
+    private final SummaryReader.Buckets buckets = new SummaryReader.Buckets();
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_session_viewer);
+
+        spSessions = findViewById(R.id.spSessions);
+        chart = findViewById(R.id.summaryChart);
+        tvViewerInfo = findViewById(R.id.tvViewerInfo);
+        RadioGroup rgMetric = findViewById(R.id.rgMetric);
+
+        chart.setViewportListener(this);
+        rgMetric.setOnCheckedChangeListener((group, checkedId) -> {
+            if (checkedId == R.id.rbCumulative) {
+                chart.setMetric(SummaryChartView.METRIC_CUMULATIVE_ANGLE);
+            } else if (checkedId == R.id.rbYaw) {
+                chart.setMetric(SummaryChartView.METRIC_YAW);
+            } else {
+                chart.setMetric(SummaryChartView.METRIC_VELOCITY);
+            }
+        });
+
+        loadSessionList();
+        spSessions.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                openSession(sessionNames.get(position));
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
+        });
+    }
+
+    private void loadSessionList() {
+        File[] files = getFilesDir().listFiles((dir, name) -> name.endsWith(SUMMARY_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                sessionNames.add(name.substring(0, name.length() - SUMMARY_SUFFIX.length()));
+            }
+        }
+        // Newest first (names end in yyyyMMdd_HHmmss)
+        Collections.sort(sessionNames, (a, b) -> b.substring(b.lastIndexOf("__")).compareTo(a.substring(a.lastIndexOf("__"))));
+
+        spSessions.setAdapter(new ArrayAdapter<>(this, android.R.layout.simple_spinner_dropdown_item, sessionNames));
+        if (sessionNames.isEmpty()) {
+            tvViewerInfo.setText("No recorded sessions yet");
+        }
+    }
+
+    private void openSession(String baseName) {
+        closeReaders();
+        try {
+            for (int i = 0; i < readers.length; i++) {
+                File file = SummaryPyramid.tierFile(getFilesDir(), baseName, SummaryPyramid.TIER_NANOS[i]);
+                if (file.exists()) {
+                    readers[i] = new SummaryReader(file);
+                }
+            }
+            if (readers[0] == null) {
+                tvViewerInfo.setText("Summary missing for " + baseName);
+                return;
+            }
+            long duration = readers[0].getDurationNanos();
+            chart.setDurationNanos(duration);
+            chart.setViewport(0, duration);
+        } catch (IOException e) {
+            Log.e(TAG, "Error opening session summary", e);
+            tvViewerInfo.setText("Error opening session: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void onViewportChanged(long startNanos, long spanNanos) {
+        int maxBuckets = Math.max(100, chart.getWidth());
+        long tier = SummaryReader.chooseTier(spanNanos, maxBuckets);
+
+        SummaryReader reader = null;
+        for (int i = 0; i < readers.length; i++) {
+            if (SummaryPyramid.TIER_NANOS[i] == tier) reader = readers[i];
+        }
+        if (reader == null) reader = readers[0];
+        if (reader == null) return;
+
+        try {
+            long began = System.nanoTime();
+            long bucketNanos = reader.getBucketNanos();
+            long first = startNanos / bucketNanos;
+            int count = (int) (spanNanos / bucketNanos) + 2;
+            reader.read(first, count, buckets);
+            double millis = (System.nanoTime() - began) / 1e6;
+
+            chart.setBuckets(buckets);
+            tvViewerInfo.setText(String.format(Locale.US,
+                    "%s – %s | %d s buckets | %d buckets, %.1f KB read in %.1f ms",
+                    formatElapsed(startNanos), formatElapsed(startNanos + spanNanos),
+                    bucketNanos / 1_000_000_000L, buckets.size,
+                    buckets.size * SummaryPyramid.RECORD_BYTES / 1024.0, millis));
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading session summary", e);
+        }
+    }
+
+    private static String formatElapsed(long nanos) {
+        long seconds = nanos / 1_000_000_000L;
+        return String.format(Locale.US, "%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+
+    private void closeReaders() {
+        for (int i = 0; i < readers.length; i++) {
+            if (readers[i] != null) {
+                try {
+                    readers[i].close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Error closing summary", e);
+                }
+                readers[i] = null;
+            }
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        closeReaders();
+    }
+}
@@ -0,0 +1,208 @@
+package com.haifa.zuzapp;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+/**
+ * Min/max band plus mean line for one metric of a session summary tier.
+ * Pinch zooms and drag pans the time axis; the owner is told the new
+ * viewport and supplies the buckets for it.
+ */
+public class SummaryChartView extends View {
+
+    public static final int METRIC_VELOCITY = 0;
+    public static final int METRIC_CUMULATIVE_ANGLE = 1;
+    public static final int METRIC_YAW = 2;
+
+    public interface ViewportListener {
+        void onViewportChanged(long startNanos, long spanNanos);
+    }
+
+    private static final long MIN_SPAN_NANOS = 10_000_000_000L;
+
+    private final Paint bandPaint = new Paint();
+    private final Paint meanPaint = new Paint();
+    private final Paint axisPaint = new Paint();
+
+    private SummaryReader.Buckets buckets;
+    private int metric = METRIC_VELOCITY;
+    private long durationNanos;
+    private long startNanos;
+    private long spanNanos = MIN_SPAN_NANOS;
+    private ViewportListener listener;
+
+    private final ScaleGestureDetector scaleDetector;
+    private final GestureDetector gestureDetector;
+
+    public SummaryChartView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        bandPaint.setColor(Color.parseColor("#902196F3"));
+        bandPaint.setStrokeWidth(2f);
+        meanPaint.setColor(Color.parseColor("#0D47A1"));
+        meanPaint.setStrokeWidth(3f);
+        meanPaint.setAntiAlias(true);
+        axisPaint.setColor(Color.parseColor("#999999"));
+        axisPaint.setStrokeWidth(1f);
+
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                float focus = detector.getFocusX() / Math.max(1, getWidth());
+                long focusNanos = startNanos + (long) (focus * spanNanos);
+                long newSpan = (long) (spanNanos / detector.getScaleFactor());
+                setViewport(focusNanos - (long) (focus * newSpan), newSpan);
+                return true;
+            }
+        });
+        gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                setViewport(startNanos + (long) (distanceX / Math.max(1, getWidth()) * spanNanos), spanNanos);
+                return true;
+            }
+
+            @Override
+            public boolean onDoubleTap(MotionEvent e) {
+                setViewport(0, durationNanos);
+                return true;
+            }
+        });
+    }
+
+    public void setViewportListener(ViewportListener listener) {
+        this.listener = listener;
+    }
+
+    public void setDurationNanos(long durationNanos) {
+        this.durationNanos = durationNanos;
+    }
+
+    public void setMetric(int metric) {
+        this.metric = metric;
+        invalidate();
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public long getSpanNanos() {
+        return spanNanos;
+    }
+
+    /**
+     * Clamp to the session and notify the listener
+     */
+    public void setViewport(long start, long span) {
+        long maxSpan = Math.max(MIN_SPAN_NANOS, durationNanos);
+        spanNanos = Math.max(MIN_SPAN_NANOS, Math.min(maxSpan, span));
+        startNanos = Math.max(0, Math.min(start, durationNanos - spanNanos));
+        if (listener != null) {
+            listener.onViewportChanged(startNanos, spanNanos);
+        }
+    }
+
+    public void setBuckets(SummaryReader.Buckets buckets) {
+        this.buckets = buckets;
+        invalidate();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        boolean handled = scaleDetector.onTouchEvent(event);
+        handled |= gestureDetector.onTouchEvent(event);
+        return handled || super.onTouchEvent(event);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        int width = getWidth();
+        int height = getHeight();
+        canvas.drawLine(0, height - 1, width, height - 1, axisPaint);
+        if (buckets == null || buckets.size == 0) return;
+
+        float[] min = metricMin();
+        float[] max = metricMax();
+        float[] mean = metricMean();
+
+        float low = Float.MAX_VALUE;
+        float high = -Float.MAX_VALUE;
+        for (int i = 0; i < buckets.size; i++) {
+            if (buckets.count[i] == 0) continue;
+            low = Math.min(low, min[i]);
+            high = Math.max(high, max[i]);
+        }
+        if (low > high) return;
+        if (high - low < 1e-3f) {
+            high += 0.5f;
+            low -= 0.5f;
+        }
+        float yScale = (height - 8) / (high - low);
+
+        float lastX = Float.NaN;
+        float lastY = Float.NaN;
+        for (int i = 0; i < buckets.size; i++) {
+            long bucketStart = (buckets.firstBucket + i) * buckets.bucketNanos;
+            float x = (float) ((bucketStart + buckets.bucketNanos / 2 - startNanos) / (double) spanNanos * width);
+            if (buckets.count[i] == 0) {
+                lastX = Float.NaN;
+                continue;
+            }
+            float yMin = height - 4 - (min[i] - low) * yScale;
+            float yMax = height - 4 - (max[i] - low) * yScale;
+            float yMean = height - 4 - (mean[i] - low) * yScale;
+            canvas.drawLine(x, yMin, x, yMax, bandPaint);
+            if (!Float.isNaN(lastX)) {
+                canvas.drawLine(lastX, lastY, x, yMean, meanPaint);
+            }
+            lastX = x;
+            lastY = yMean;
+        }
+
+        if (low < 0 && high > 0) {
+            float zero = height - 4 - (0 - low) * yScale;
+            canvas.drawLine(0, zero, width, zero, axisPaint);
+        }
+    }
+
+    private float[] metricMin() {
+        switch (metric) {
+            case METRIC_CUMULATIVE_ANGLE:
+                return buckets.cumulativeMin;
+            case METRIC_YAW:
+                return buckets.yawMin;
+            default:
+                return buckets.velocityMin;
+        }
+    }
+
+    private float[] metricMax() {
+        switch (metric) {
+            case METRIC_CUMULATIVE_ANGLE:
+                return buckets.cumulativeMax;
+            case METRIC_YAW:
+                return buckets.yawMax;
+            default:
+                return buckets.velocityMax;
+        }
+    }
+
+    private float[] metricMean() {
+        switch (metric) {
+            case METRIC_CUMULATIVE_ANGLE:
+                return buckets.cumulativeMean;
+            case METRIC_YAW:
+                return buckets.yawMean;
+            default:
+                return buckets.velocityMean;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.haifa.zuzapp;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Multi-resolution summary of a session, maintained as samples arrive.
+ *
+ * For each tier (1 s, 10 s, 60 s buckets) a file next to the session CSV
+ * holds one fixed-size record per bucket with the sample count and the
+ * min/max/mean of angular velocity, cumulative angle and calibrated yaw.
+ * Bucket i is always record i (empty buckets are written with count 0), so
+ * a viewer can seek straight to any time range of any tier.
+ *
+ * File layout (big-endian):
+ *   header: int magic "ZZSP", int version, long bucketNanos, long startWallMillis
+ *   record: int count, then min, max, mean floats for velocity, cumulative angle, yaw
+ */
+public class SummaryPyramid implements Closeable {
+
+    public static final int MAGIC = 0x5A5A5350; // "ZZSP"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 24;
+    public static final int RECORD_BYTES = 4 + 9 * 4;
+
+    public static final long[] TIER_NANOS = {
+            1_000_000_000L,
+            10_000_000_000L,
+            60_000_000_000L,
+    };
+
+    private final Tier[] tiers;
+
+    /**
+     * @param directory        where the session CSV lives
+     * @param sessionBaseName  CSV file name without ".csv"
+     */
+    public SummaryPyramid(File directory, String sessionBaseName, long startWallMillis) throws IOException {
+        tiers = new Tier[TIER_NANOS.length];
+        try {
+            for (int i = 0; i < TIER_NANOS.length; i++) {
+                tiers[i] = new Tier(tierFile(directory, sessionBaseName, TIER_NANOS[i]), TIER_NANOS[i],
+                        startWallMillis);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Summary file of the given tier for a session
+     */
+    public static File tierFile(File directory, String sessionBaseName, long bucketNanos) {
+        return new File(directory, sessionBaseName + ".summary-" + (bucketNanos / 1_000_000_000L) + "s.bin");
+    }
+
+    /**
+     * Add one sample; elapsedNanos must be non-decreasing within the session
+     */
+    public void add(long elapsedNanos, float velocity, float cumulativeAngle, float yaw) throws IOException {
+        long t = Math.max(0, elapsedNanos);
+        for (Tier tier : tiers) {
+            tier.add(t, velocity, cumulativeAngle, yaw);
+        }
+    }
+
+    /**
+     * Write the partially filled last buckets and close the files
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Tier tier : tiers) {
+            if (tier == null) continue;
+            try {
+                tier.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    private static class Tier {
+        final long bucketNanos;
+        final DataOutputStream out;
+        long bucket;      // index of the bucket being accumulated
+        long written;     // records written so far
+        int count;
+        final Stat velocity = new Stat();
+        final Stat cumulative = new Stat();
+        final Stat yaw = new Stat();
+
+        Tier(File file, long bucketNanos, long startWallMillis) throws IOException {
+            this.bucketNanos = bucketNanos;
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(bucketNanos);
+            out.writeLong(startWallMillis);
+            out.flush();
+        }
+
+        void add(long elapsedNanos, float v, float c, float y) throws IOException {
+            long b = elapsedNanos / bucketNanos;
+            if (b > bucket) {
+                flushBucket();
+                // Keep record index == bucket index across gaps
+                while (written < b) {
+                    writeRecord();
+                }
+                bucket = b;
+                out.flush();
+            }
+            count++;
+            velocity.add(v);
+            cumulative.add(c);
+            yaw.add(y);
+        }
+
+        void flushBucket() throws IOException {
+            if (written <= bucket) {
+                writeRecord();
+            }
+        }
+
+        private void writeRecord() throws IOException {
+            out.writeInt(count);
+            velocity.writeTo(out, count);
+            cumulative.writeTo(out, count);
+            yaw.writeTo(out, count);
+            written++;
+            count = 0;
+            velocity.reset();
+            cumulative.reset();
+            yaw.reset();
+        }
+
+        void close() throws IOException {
+            try {
+                if (count > 0) {
+                    flushBucket();
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static class Stat {
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        double sum;
+
+        void add(float value) {
+            if (value < min) min = value;
+            if (value > max) max = value;
+            sum += value;
+        }
+
+        void writeTo(DataOutputStream out, int count) throws IOException {
+            if (count == 0) {
+                out.writeFloat(0f);
+                out.writeFloat(0f);
+                out.writeFloat(0f);
+            } else {
+                out.writeFloat(min);
+                out.writeFloat(max);
+                out.writeFloat((float) (sum / count));
+            }
+        }
+
+        void reset() {
+            min = Float.MAX_VALUE;
+            max = -Float.MAX_VALUE;
+            sum = 0;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.haifa.zuzapp;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+/**
+ * Random-access reader for one tier of a SummaryPyramid. Only the records
+ * of the requested range are read from disk.
+ */
+public class SummaryReader implements Closeable {
+
+    /**
+     * A run of consecutive buckets; index 0 is bucket firstBucket
+     */
+    public static class Buckets {
+        public long firstBucket;
+        public long bucketNanos;
+        public int size;
+        public int[] count = new int[0];
+        public float[] velocityMin = new float[0];
+        public float[] velocityMax = new float[0];
+        public float[] velocityMean = new float[0];
+        public float[] cumulativeMin = new float[0];
+        public float[] cumulativeMax = new float[0];
+        public float[] cumulativeMean = new float[0];
+        public float[] yawMin = new float[0];
+        public float[] yawMax = new float[0];
+        public float[] yawMean = new float[0];
+
+        void ensureCapacity(int n) {
+            if (count.length >= n) return;
+            count = new int[n];
+            velocityMin = new float[n];
+            velocityMax = new float[n];
+            velocityMean = new float[n];
+            cumulativeMin = new float[n];
+            cumulativeMax = new float[n];
+            cumulativeMean = new float[n];
+            yawMin = new float[n];
+            yawMax = new float[n];
+            yawMean = new float[n];
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final long bucketNanos;
+    private final long startWallMillis;
+    private byte[] buffer = new byte[0];
+
+    public SummaryReader(File tierFile) throws IOException {
+        file = new RandomAccessFile(tierFile, "r");
+        try {
+            if (file.length() < SummaryPyramid.HEADER_BYTES || file.readInt() != SummaryPyramid.MAGIC) {
+                throw new IOException("Not a summary file: " + tierFile);
+            }
+            int version = file.readInt();
+            if (version != SummaryPyramid.VERSION) {
+                throw new IOException("Unsupported summary version " + version + ": " + tierFile);
+            }
+            bucketNanos = file.readLong();
+            startWallMillis = file.readLong();
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Coarsest-needed tier: the finest one whose buckets over spanNanos fit in maxBuckets
+     */
+    public static long chooseTier(long spanNanos, int maxBuckets) {
+        for (long tier : SummaryPyramid.TIER_NANOS) {
+            if (spanNanos / tier <= maxBuckets) {
+                return tier;
+            }
+        }
+        return SummaryPyramid.TIER_NANOS[SummaryPyramid.TIER_NANOS.length - 1];
+    }
+
+    public long getBucketNanos() {
+        return bucketNanos;
+    }
+
+    public long getStartWallMillis() {
+        return startWallMillis;
+    }
+
+    /**
+     * Number of buckets written so far (the file may still be growing)
+     */
+    public long getBucketCount() throws IOException {
+        return (file.length() - SummaryPyramid.HEADER_BYTES) / SummaryPyramid.RECORD_BYTES;
+    }
+
+    /**
+     * Session length covered by this tier
+     */
+    public long getDurationNanos() throws IOException {
+        return getBucketCount() * bucketNanos;
+    }
+
+    /**
+     * Read buckets [firstBucket, firstBucket + maxCount) clipped to the file
+     * into out (reusing its arrays)
+     */
+    public void read(long firstBucket, int maxCount, Buckets out) throws IOException {
+        long first = Math.max(0, firstBucket);
+        int n = (int) Math.max(0, Math.min(maxCount, getBucketCount() - first));
+        out.ensureCapacity(n);
+        out.firstBucket = first;
+        out.bucketNanos = bucketNanos;
+        out.size = n;
+        if (n == 0) return;
+
+        int bytes = n * SummaryPyramid.RECORD_BYTES;
+        if (buffer.length < bytes) {
+            buffer = new byte[bytes];
+        }
+        file.seek(SummaryPyramid.HEADER_BYTES + first * SummaryPyramid.RECORD_BYTES);
+        file.readFully(buffer, 0, bytes);
+
+        ByteBuffer in = ByteBuffer.wrap(buffer, 0, bytes);
+        for (int i = 0; i < n; i++) {
+            out.count[i] = in.getInt();
+            out.velocityMin[i] = in.getFloat();
+            out.velocityMax[i] = in.getFloat();
+            out.velocityMean[i] = in.getFloat();
+            out.cumulativeMin[i] = in.getFloat();
+            out.cumulativeMax[i] = in.getFloat();
+            out.cumulativeMean[i] = in.getFloat();
+            out.yawMin[i] = in.getFloat();
+            out.yawMax[i] = in.getFloat();
+            out.yawMean[i] = in.getFloat();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
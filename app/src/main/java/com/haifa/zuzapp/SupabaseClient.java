@@ -4,13 +4,23 @@ import android.util.Log;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import java.io.BufferedReader;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Supabase client for inserting movement records and session data
@@ -19,28 +29,130 @@ public class SupabaseClient {
 
     private static final String TAG = "SupabaseClient";
 
-    // TODO: Replace these with your actual Supabase project values
-    private static final String SUPABASE_URL = Config.getSupabaseUrl();
-    private static final String SUPABASE_ANON_KEY = Config.getSupabaseAnonKey();
+    private final String supabaseUrl;
+    private final String supabaseAnonKey;
+    private final ConnectionFactory connectionFactory;
 
-    private final ExecutorService executorService;
+    // Movement records are upserted on this key, so a batch that is sent twice
+    // (retry after a lost response, or overlapping in-flight batches) is stored once
+    private static final String MOVEMENT_RECORDS_ENDPOINT =
+            "/rest/v1/movement_records?on_conflict=session_id,experimenter_code,recording_id,seq";
+    private static final String MOVEMENT_BOUTS_ENDPOINT =
+            "/rest/v1/movement_bouts?on_conflict=session_id,experimenter_code,recording_id,bout_index";
+    private static final String PREFER_MINIMAL = "return=minimal";
+    private static final String PREFER_UPSERT_IGNORE = "resolution=ignore-duplicates,return=minimal";
+    private static final String SESSIONS_UPSERT_ENDPOINT = "/rest/v1/sessions?on_conflict=session_id,experimenter_code,recording_id";
+    private static final String PREFER_UPSERT_MERGE = "resolution=merge-duplicates,return=minimal";
 
+    // Retry policy for movement batches
+    private static final int MAX_UPLOAD_ATTEMPTS = 6;
+    private static final long INITIAL_RETRY_DELAY_MS = 500;
+    private static final long MAX_RETRY_DELAY_MS = 30_000;
+
+    private static final int CONNECT_TIMEOUT_MS = 10_000;
+    private static final int READ_TIMEOUT_MS = 15_000;
+
+    // Upper bound on records queued behind the in-flight window; the oldest
+    // batches are dropped beyond this (they remain in the local CSV)
+    private static final int MAX_PENDING_RECORDS = 20_000;
+
+    // Session calls and retry timers
+    private final ScheduledExecutorService executorService;
+    // Movement batches; concurrency is bounded by the controller's window
+    private final ExecutorService uploadExecutor;
+    private final UploadController uploadController = new UploadController();
+
+    // Batches waiting for an in-flight slot (guarded by itself)
+    private final ArrayDeque<MovementBatch> pendingBatches = new ArrayDeque<>();
+    private int pendingRecordCount;
+    private long droppedRecordCount;
+
+    // Acknowledged high-water mark per session ("sessionId/experimenterCode")
+    private final ConcurrentHashMap<String, AckTracker> ackTrackers = new ConcurrentHashMap<>();
+
+    // Backlog uploads are gzip-compressed when enabled, until the server rejects a compressed body
+    private volatile boolean gzipBacklog;
+
+    /**
+     * Client for the project configured in local.properties (see README)
+     */
     public SupabaseClient() {
-        this.executorService = Executors.newFixedThreadPool(3);
+        this(BuildConfig.SUPABASE_URL, BuildConfig.SUPABASE_ANON_KEY);
+        this.gzipBacklog = BuildConfig.SUPABASE_GZIP;
+    }
+
+    /**
+     * Client for an explicit endpoint, e.g. a local stand-in server in tests
+     */
+    public SupabaseClient(String supabaseUrl, String supabaseAnonKey) {
+        this(supabaseUrl, supabaseAnonKey, url -> (HttpURLConnection) url.openConnection());
+    }
+
+    /**
+     * Client whose HTTP connections come from connectionFactory (tests)
+     */
+    SupabaseClient(String supabaseUrl, String supabaseAnonKey, ConnectionFactory connectionFactory) {
+        this.supabaseUrl = supabaseUrl;
+        this.supabaseAnonKey = supabaseAnonKey;
+        this.connectionFactory = connectionFactory;
+        this.executorService = Executors.newScheduledThreadPool(2);
+        this.uploadExecutor = Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Opens the connection for one request
+     */
+    interface ConnectionFactory {
+        HttpURLConnection open(URL url) throws IOException;
+    }
+
+    /**
+     * A batch of movement records (or bouts) covering seq firstSeq..lastSeq of one session
+     */
+    private static class MovementBatch {
+        final String endpoint;
+        final AckTracker tracker;
+        final long firstSeq;
+        final long lastSeq;
+        final JSONArray records;
+        int attempt;
+
+        MovementBatch(String endpoint, AckTracker tracker, long firstSeq, long lastSeq, JSONArray records) {
+            this.endpoint = endpoint;
+            this.tracker = tracker;
+            this.firstSeq = firstSeq;
+            this.lastSeq = lastSeq;
+            this.records = records;
+        }
     }
 
     /**
      * Insert a session start record
      */
-    public void insertSessionStart(String sessionId, String experimenterCode,
+    public void insertSessionStart(String sessionId, String experimenterCode, String recordingId,
                                    String startTime, long startTimeMillis,
                                    String deviceModel, String androidVersion,
                                    String filePath) {
+        insertSessionStart(sessionId, experimenterCode, recordingId, startTime, startTimeMillis,
+                deviceModel, androidVersion, filePath, null);
+    }
+
+    /**
+     * Insert a session start record
+     *
+     * @param onResult told whether the server stored it (may be null)
+     */
+    public void insertSessionStart(String sessionId, String experimenterCode, String recordingId,
+                                   String startTime, long startTimeMillis,
+                                   String deviceModel, String androidVersion,
+                                   String filePath, Consumer<Boolean> onResult) {
         executorService.execute(() -> {
+            boolean stored = false;
             try {
                 JSONObject sessionData = new JSONObject();
                 sessionData.put("session_id", sessionId);
                 sessionData.put("experimenter_code", experimenterCode);
+                sessionData.put("recording_id", recordingId);
                 sessionData.put("start_time", startTime);
                 sessionData.put("start_time_millis", startTimeMillis);
                 sessionData.put("status", "started");
@@ -50,19 +162,35 @@ public class SupabaseClient {
 
                 String response = makePostRequest("/rest/v1/sessions", sessionData);
                 Log.d(TAG, "Session start inserted to Supabase: " + response);
+                stored = true;
 
             } catch (Exception e) {
                 Log.e(TAG, "Error inserting session start to Supabase", e);
             }
+            if (onResult != null) {
+                onResult.accept(stored);
+            }
         });
     }
 
     /**
      * Update session with end time and duration
      */
-    public void updateSessionEnd(String sessionId, String experimenterCode,
+    public void updateSessionEnd(String sessionId, String experimenterCode, String recordingId,
                                  String endTime, long endTimeMillis, long durationMs) {
+        updateSessionEnd(sessionId, experimenterCode, recordingId, endTime, endTimeMillis, durationMs, null);
+    }
+
+    /**
+     * Update session with end time and duration
+     *
+     * @param onResult told whether the server stored it (may be null)
+     */
+    public void updateSessionEnd(String sessionId, String experimenterCode, String recordingId,
+                                 String endTime, long endTimeMillis, long durationMs,
+                                 Consumer<Boolean> onResult) {
         executorService.execute(() -> {
+            boolean stored = false;
             try {
                 JSONObject updateData = new JSONObject();
                 updateData.put("end_time", endTime);
@@ -70,33 +198,275 @@ public class SupabaseClient {
                 updateData.put("duration_ms", durationMs);
                 updateData.put("status", "completed");
 
-                // Use both session_id AND experimenter_code to uniquely identify the session
+                // session_id, experimenter_code AND recording_id identify one recording
                 String endpoint = "/rest/v1/sessions?session_id=eq." + sessionId
-                        + "&experimenter_code=eq." + experimenterCode;
+                        + "&experimenter_code=eq." + experimenterCode
+                        + "&recording_id=eq." + recordingId;
                 String response = makePatchRequest(endpoint, updateData);
                 Log.d(TAG, "Session end updated in Supabase: " + response);
+                stored = true;
 
             } catch (Exception e) {
                 Log.e(TAG, "Error updating session end in Supabase", e);
             }
+            if (onResult != null) {
+                onResult.accept(stored);
+            }
         });
     }
 
     /**
-     * Insert a batch of movement records
+     * Create or complete a session row, on the calling thread (deferred sync).
+     * Existing columns not in the row are kept.
      */
-    public void insertMovementRecords(JSONArray records) {
+    public void upsertSessionNow(JSONObject session) throws Exception {
+        makePostRequest(SESSIONS_UPSERT_ENDPOINT, session, PREFER_UPSERT_MERGE, false);
+    }
+
+    /**
+     * Compress backlog uploads (off by default; supabase.gzip in local.properties)
+     */
+    public void setGzipBacklog(boolean gzipBacklog) {
+        this.gzipBacklog = gzipBacklog;
+    }
+
+    public boolean isGzipBacklog() {
+        return gzipBacklog;
+    }
+
+    /**
+     * Upsert a large backlog chunk (possibly spanning several sessions) on the
+     * calling thread, gzip-compressed if enabled. If the server refuses the
+     * compressed body (see isGzipRejection) the chunk is resent plain and
+     * compression stays off for this client.
+     */
+    public void upsertMovementRecordsNow(JSONArray records) throws Exception {
         if (records.length() == 0) return;
 
-        executorService.execute(() -> {
+        if (gzipBacklog) {
             try {
-                String response = makePostRequest("/rest/v1/movement_records", records);
-                Log.d(TAG, "Batch of " + records.length() + " records inserted to Supabase");
+                makePostRequest(MOVEMENT_RECORDS_ENDPOINT, records, PREFER_UPSERT_IGNORE, true);
+                return;
+            } catch (SupabaseHttpException e) {
+                if (!isGzipRejection(e)) {
+                    throw e;
+                }
+                Log.w(TAG, "Server rejected a gzip request body (" + e.getStatusCode() + "), sending uncompressed");
+                gzipBacklog = false;
+            }
+        }
+        makePostRequest(MOVEMENT_RECORDS_ENDPOINT, records, PREFER_UPSERT_IGNORE, false);
+    }
 
-            } catch (Exception e) {
-                Log.e(TAG, "Error inserting movement records to Supabase", e);
+    /**
+     * 415, or a 400 that names the content encoding. Any other 400 is a
+     * problem with the rows themselves and would fail plain as well.
+     */
+    static boolean isGzipRejection(SupabaseHttpException e) {
+        if (e.getStatusCode() == 415) return true;
+        if (e.getStatusCode() != 400 || e.getBody() == null) return false;
+        String body = e.getBody().toLowerCase(Locale.ROOT);
+        return body.contains("content-encoding") || body.contains("content encoding");
+    }
+
+    /**
+     * Upsert a batch of movement records carrying seq numbers firstSeq..lastSeq.
+     * Duplicates are ignored by the server, so failed batches are retried with
+     * backoff and several batches may be in flight at once; how many is decided
+     * by the UploadController.
+     */
+    public void upsertMovementRecords(String sessionId, String experimenterCode,
+                                      long firstSeq, long lastSeq, JSONArray records) {
+        if (records.length() == 0) return;
+
+        AckTracker tracker = getAckTracker(sessionKey(sessionId, experimenterCode));
+        enqueue(new MovementBatch(MOVEMENT_RECORDS_ENDPOINT, tracker, firstSeq, lastSeq, records), false);
+        pumpUploads();
+    }
+
+    /**
+     * Upsert movement bout summaries with bout_index firstIndex..lastIndex.
+     * Shares the retrying, window-limited upload path with movement records.
+     */
+    public void upsertMovementBouts(String sessionId, String experimenterCode,
+                                    long firstIndex, long lastIndex, JSONArray bouts) {
+        if (bouts.length() == 0) return;
+
+        AckTracker tracker = getAckTracker(boutSessionKey(sessionId, experimenterCode));
+        enqueue(new MovementBatch(MOVEMENT_BOUTS_ENDPOINT, tracker, firstIndex, lastIndex, bouts), false);
+        pumpUploads();
+    }
+
+    private void enqueue(MovementBatch batch, boolean front) {
+        synchronized (pendingBatches) {
+            if (front) {
+                pendingBatches.addFirst(batch);
+            } else {
+                pendingBatches.addLast(batch);
             }
-        });
+            pendingRecordCount += batch.records.length();
+
+            while (pendingRecordCount > MAX_PENDING_RECORDS && pendingBatches.size() > 1) {
+                MovementBatch dropped = pendingBatches.pollFirst();
+                pendingRecordCount -= dropped.records.length();
+                droppedRecordCount += dropped.records.length();
+                Log.w(TAG, "Upload backlog full, dropped batch seq " + dropped.firstSeq + ".." + dropped.lastSeq);
+            }
+        }
+    }
+
+    /**
+     * Start as many pending batches as the in-flight window allows
+     */
+    private void pumpUploads() {
+        while (!uploadExecutor.isShutdown()) {
+            MovementBatch batch;
+            synchronized (pendingBatches) {
+                if (pendingBatches.isEmpty() || !uploadController.tryAcquire()) {
+                    return;
+                }
+                batch = pendingBatches.pollFirst();
+                pendingRecordCount -= batch.records.length();
+            }
+            uploadExecutor.execute(() -> sendMovementBatch(batch));
+        }
+    }
+
+    private void sendMovementBatch(MovementBatch batch) {
+        batch.attempt++;
+        long startNanos = System.nanoTime();
+        try {
+            makePostRequest(batch.endpoint, batch.records, PREFER_UPSERT_IGNORE, false);
+            long now = System.nanoTime();
+            uploadController.onSuccess(batch.records.length(), now - startNanos, hasPendingBatches(), now);
+            batch.tracker.ack(batch.firstSeq, batch.lastSeq);
+            Log.d(TAG, "Batch seq " + batch.firstSeq + ".." + batch.lastSeq + " upserted to Supabase (acked through "
+                    + batch.tracker.getHighWaterMark() + ", window " + uploadController.getWindow() + ")");
+
+        } catch (Exception e) {
+            boolean congestion = e instanceof SocketTimeoutException
+                    || (e instanceof SupabaseHttpException && ((SupabaseHttpException) e).isRetryable());
+            if (congestion) {
+                uploadController.onCongestion(System.nanoTime());
+            } else {
+                uploadController.onError(System.nanoTime());
+            }
+
+            boolean retryable = congestion || e instanceof IOException;
+            if (!retryable || batch.attempt >= MAX_UPLOAD_ATTEMPTS || executorService.isShutdown()) {
+                Log.e(TAG, "Giving up on batch seq " + batch.firstSeq + ".." + batch.lastSeq
+                        + " after " + batch.attempt + " attempt(s)", e);
+                synchronized (pendingBatches) {
+                    droppedRecordCount += batch.records.length();
+                }
+            } else {
+                long delay = Math.min(MAX_RETRY_DELAY_MS, INITIAL_RETRY_DELAY_MS << (batch.attempt - 1));
+                Log.w(TAG, "Batch seq " + batch.firstSeq + ".." + batch.lastSeq + " failed, retrying in "
+                        + delay + " ms (window " + uploadController.getWindow() + ")", e);
+                executorService.schedule(() -> {
+                    enqueue(batch, true);
+                    pumpUploads();
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            pumpUploads();
+        }
+    }
+
+    private boolean hasPendingBatches() {
+        synchronized (pendingBatches) {
+            return !pendingBatches.isEmpty();
+        }
+    }
+
+    /**
+     * Batch size the logger should accumulate before calling upsertMovementRecords
+     */
+    public int getRecommendedBatchSize() {
+        return uploadController.getBatchSize();
+    }
+
+    // ---------------------------------------------------------
+    // Upload metrics
+    // ---------------------------------------------------------
+
+    public int getInFlightWindow() {
+        return uploadController.getWindow();
+    }
+
+    public int getInFlightCount() {
+        return uploadController.getInFlight();
+    }
+
+    public double getThroughputRecordsPerSec() {
+        return uploadController.getThroughputRecordsPerSec();
+    }
+
+    public double getSmoothedLatencyMs() {
+        return uploadController.getSmoothedLatencyMs();
+    }
+
+    public long getTotalRecordsAcked() {
+        return uploadController.getTotalRecordsAcked();
+    }
+
+    public int getPendingRecordCount() {
+        synchronized (pendingBatches) {
+            return pendingRecordCount;
+        }
+    }
+
+    /**
+     * Records not uploaded live: dropped from a full backlog, or abandoned
+     * after a permanent error or the last retry (BacklogSync sends them later)
+     */
+    public long getDroppedRecordCount() {
+        synchronized (pendingBatches) {
+            return droppedRecordCount;
+        }
+    }
+
+    /**
+     * Highest seq of the session such that every record up to it has been
+     * acknowledged by the server (0 if none)
+     */
+    public long getAckedHighWaterMark(String sessionId, String experimenterCode) {
+        AckTracker tracker = ackTrackers.get(sessionKey(sessionId, experimenterCode));
+        return tracker != null ? tracker.getHighWaterMark() : 0;
+    }
+
+    /**
+     * Highest bout_index of the session acknowledged with no gaps below it (0 if none)
+     */
+    public long getAckedBoutHighWaterMark(String sessionId, String experimenterCode) {
+        AckTracker tracker = ackTrackers.get(boutSessionKey(sessionId, experimenterCode));
+        return tracker != null ? tracker.getHighWaterMark() : 0;
+    }
+
+    /**
+     * Forget the session's acknowledgement tracking once its final high-water
+     * mark has been read. Batches still in flight keep their tracker; their
+     * acks are simply no longer reported.
+     */
+    public void releaseSession(String sessionId, String experimenterCode) {
+        ackTrackers.remove(sessionKey(sessionId, experimenterCode));
+        ackTrackers.remove(boutSessionKey(sessionId, experimenterCode));
+    }
+
+    int getTrackedSessionCount() {
+        return ackTrackers.size();
+    }
+
+    private AckTracker getAckTracker(String key) {
+        return ackTrackers.computeIfAbsent(key, k -> new AckTracker(0));
+    }
+
+    private static String sessionKey(String sessionId, String experimenterCode) {
+        return sessionId + "/" + experimenterCode;
+    }
+
+    private static String boutSessionKey(String sessionId, String experimenterCode) {
+        return sessionKey(sessionId, experimenterCode) + "#bouts";
     }
 
     /**
@@ -127,15 +497,24 @@ public class SupabaseClient {
      * Make a POST request to Supabase
      */
     private String makePostRequest(String endpoint, Object data) throws Exception {
-        URL url = new URL(SUPABASE_URL + endpoint);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        return makePostRequest(endpoint, data, PREFER_MINIMAL, false);
+    }
+
+    private String makePostRequest(String endpoint, Object data, String prefer, boolean gzip) throws Exception {
+        URL url = new URL(supabaseUrl + endpoint);
+        HttpURLConnection conn = connectionFactory.open(url);
 
         try {
             conn.setRequestMethod("POST");
-            conn.setRequestProperty("apikey", SUPABASE_ANON_KEY);
-            conn.setRequestProperty("Authorization", "Bearer " + SUPABASE_ANON_KEY);
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            conn.setReadTimeout(READ_TIMEOUT_MS);
+            conn.setRequestProperty("apikey", supabaseAnonKey);
+            conn.setRequestProperty("Authorization", "Bearer " + supabaseAnonKey);
             conn.setRequestProperty("Content-Type", "application/json");
-            conn.setRequestProperty("Prefer", "return=minimal");
+            conn.setRequestProperty("Prefer", prefer);
+            if (gzip) {
+                conn.setRequestProperty("Content-Encoding", "gzip");
+            }
             conn.setDoOutput(true);
 
             String jsonData;
@@ -147,24 +526,22 @@ public class SupabaseClient {
                 jsonData = data.toString();
             }
 
-            try (OutputStream os = conn.getOutputStream()) {
-                byte[] input = jsonData.getBytes(StandardCharsets.UTF_8);
-                os.write(input, 0, input.length);
+            byte[] input = jsonData.getBytes(StandardCharsets.UTF_8);
+            if (gzip) {
+                try (OutputStream os = new GZIPOutputStream(conn.getOutputStream())) {
+                    os.write(input, 0, input.length);
+                }
+            } else {
+                try (OutputStream os = conn.getOutputStream()) {
+                    os.write(input, 0, input.length);
+                }
             }
 
             int responseCode = conn.getResponseCode();
             if (responseCode >= 200 && responseCode < 300) {
                 return "Success";
-            } else {
-                BufferedReader br = new BufferedReader(
-                        new InputStreamReader(conn.getErrorStream(), StandardCharsets.UTF_8));
-                StringBuilder response = new StringBuilder();
-                String line;
-                while ((line = br.readLine()) != null) {
-                    response.append(line.trim());
-                }
-                throw new Exception("HTTP " + responseCode + ": " + response.toString());
             }
+            throw new SupabaseHttpException(responseCode, readErrorBody(conn));
 
         } finally {
             conn.disconnect();
@@ -175,13 +552,15 @@ public class SupabaseClient {
      * Make a PATCH request to Supabase
      */
     private String makePatchRequest(String endpoint, JSONObject data) throws Exception {
-        URL url = new URL(SUPABASE_URL + endpoint);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        URL url = new URL(supabaseUrl + endpoint);
+        HttpURLConnection conn = connectionFactory.open(url);
 
         try {
             conn.setRequestMethod("PATCH");
-            conn.setRequestProperty("apikey", SUPABASE_ANON_KEY);
-            conn.setRequestProperty("Authorization", "Bearer " + SUPABASE_ANON_KEY);
+            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+            conn.setReadTimeout(READ_TIMEOUT_MS);
+            conn.setRequestProperty("apikey", supabaseAnonKey);
+            conn.setRequestProperty("Authorization", "Bearer " + supabaseAnonKey);
             conn.setRequestProperty("Content-Type", "application/json");
             conn.setRequestProperty("Prefer", "return=minimal");
             conn.setDoOutput(true);
@@ -194,16 +573,8 @@ public class SupabaseClient {
             int responseCode = conn.getResponseCode();
             if (responseCode >= 200 && responseCode < 300) {
                 return "Success";
-            } else {
-                BufferedReader br = new BufferedReader(
-                        new InputStreamReader(conn.getErrorStream(), StandardCharsets.UTF_8));
-                StringBuilder response = new StringBuilder();
-                String line;
-                while ((line = br.readLine()) != null) {
-                    response.append(line.trim());
-                }
-                throw new Exception("HTTP " + responseCode + ": " + response.toString());
             }
+            throw new SupabaseHttpException(responseCode, readErrorBody(conn));
 
         } finally {
             conn.disconnect();
@@ -211,11 +582,35 @@ public class SupabaseClient {
     }
 
     /**
-     * Shutdown the executor service
+     * Body of an error response; gateways often send 429/5xx with none, in
+     * which case getErrorStream() is null
+     */
+    private static String readErrorBody(HttpURLConnection conn) {
+        InputStream errorStream = conn.getErrorStream();
+        if (errorStream == null) {
+            return "";
+        }
+        StringBuilder response = new StringBuilder();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(errorStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                response.append(line.trim());
+            }
+        } catch (IOException e) {
+            // The status code is what matters; keep whatever was read
+        }
+        return response.toString();
+    }
+
+    /**
+     * Shutdown the executor services
      */
     public void shutdown() {
         if (executorService != null && !executorService.isShutdown()) {
             executorService.shutdown();
         }
+        if (uploadExecutor != null && !uploadExecutor.isShutdown()) {
+            uploadExecutor.shutdown();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,29 @@
+package com.haifa.zuzapp;
+
+/**
+ * Non-2xx response from Supabase, carrying the status code so callers can
+ * tell retryable failures (408, 429, 5xx) from permanent ones
+ */
+public class SupabaseHttpException extends Exception {
+
+    private final int statusCode;
+    private final String body;
+
+    public SupabaseHttpException(int statusCode, String body) {
+        super("HTTP " + statusCode + ": " + body);
+        this.statusCode = statusCode;
+        this.body = body;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public boolean isRetryable() {
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+}
@@ -0,0 +1,79 @@
+package com.haifa.zuzapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs BacklogSync over the app's session files when the device is charging
+ * and on an unmetered network. Device idle is deliberately not required: a
+ * lab phone in use between sessions may not go idle for days, and BacklogSync
+ * saves progress per chunk, so being stopped when the user picks the phone up
+ * costs nothing.
+ */
+public class SyncWorker extends Worker {
+
+    private static final String TAG = "SyncWorker";
+    private static final String WORK_AFTER_SESSION = "backlog-sync";
+    private static final String WORK_PERIODIC = "backlog-sync-periodic";
+    private static final long PERIODIC_INTERVAL_HOURS = 12;
+
+    public SyncWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    private static Constraints constraints() {
+        return new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.UNMETERED)
+                .setRequiresCharging(true)
+                .build();
+    }
+
+    /**
+     * Sync once the constraints are met (after a session left data behind)
+     */
+    public static void enqueue(Context context) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(SyncWorker.class)
+                .setConstraints(constraints())
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(WORK_AFTER_SESSION, ExistingWorkPolicy.KEEP, request);
+    }
+
+    /**
+     * Safety net for sessions whose app was killed before enqueue ran
+     */
+    public static void schedulePeriodic(Context context) {
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(SyncWorker.class,
+                PERIODIC_INTERVAL_HOURS, TimeUnit.HOURS)
+                .setConstraints(constraints())
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(WORK_PERIODIC,
+                ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        SupabaseClient client = new SupabaseClient();
+        try {
+            BacklogSync sync = new BacklogSync(client, getApplicationContext().getFilesDir());
+            BacklogSync.Outcome outcome = sync.run(this::isStopped);
+            Log.d(TAG, "Backlog sync " + outcome + ": " + sync.getRecordsSent() + " records");
+            return outcome == BacklogSync.Outcome.COMPLETE ? Result.success() : Result.retry();
+        } finally {
+            client.shutdown();
+        }
+    }
+}
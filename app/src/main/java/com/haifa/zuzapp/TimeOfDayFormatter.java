@@ -0,0 +1,110 @@
+package com.haifa.zuzapp;
+
+import java.util.TimeZone;
+
+/**
+ * Formats epoch millis as local HH:mm:ss.SSS.
+ *
+ * Replaces a per-sample SimpleDateFormat: the zone offset is cached until it
+ * could next change and digits are written into a reused buffer, so
+ * formatting does no work beyond the returned String. Not thread-safe.
+ */
+public class TimeOfDayFormatter {
+
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    private final TimeZone timeZone;
+    private final char[] buffer = new char[12];
+
+    // Zone offset is valid for [cachedStart, cachedEnd)
+    private long cachedStart = Long.MAX_VALUE;
+    private long cachedEnd = Long.MIN_VALUE;
+    private int cachedOffset;
+
+    public TimeOfDayFormatter() {
+        this(TimeZone.getDefault());
+    }
+
+    public TimeOfDayFormatter(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    public String format(long wallMillis) {
+        fill(wallMillis);
+        return new String(buffer);
+    }
+
+    /**
+     * Append the formatted time to an existing builder without allocating
+     */
+    public void formatTo(long wallMillis, StringBuilder out) {
+        fill(wallMillis);
+        out.append(buffer);
+    }
+
+    private void fill(long wallMillis) {
+        if (wallMillis < cachedStart || wallMillis >= cachedEnd) {
+            cacheOffset(wallMillis);
+        }
+
+        int msOfDay = (int) Math.floorMod(wallMillis + cachedOffset, MILLIS_PER_DAY);
+        int millis = msOfDay % 1000;
+        int seconds = (msOfDay / 1000) % 60;
+        int minutes = (msOfDay / 60_000) % 60;
+        int hours = msOfDay / 3_600_000;
+
+        putTwoDigits(0, hours);
+        buffer[2] = ':';
+        putTwoDigits(3, minutes);
+        buffer[5] = ':';
+        putTwoDigits(6, seconds);
+        buffer[8] = '.';
+        buffer[9] = (char) ('0' + millis / 100);
+        buffer[10] = (char) ('0' + (millis / 10) % 10);
+        buffer[11] = (char) ('0' + millis % 10);
+    }
+
+    /**
+     * Cache the offset at wallMillis for the surrounding UTC hour, narrowed
+     * to the transition if the offset changes within it. Some zones change
+     * off the hour (Australia/Lord_Howe at :30, historical local mean time at
+     * odd seconds). java.time's ZoneRules would give the next transition
+     * directly but needs API 26.
+     */
+    private void cacheOffset(long wallMillis) {
+        long start = Math.floorDiv(wallMillis, MILLIS_PER_HOUR) * MILLIS_PER_HOUR;
+        long end = start + MILLIS_PER_HOUR;
+        int offset = timeZone.getOffset(wallMillis);
+
+        if (timeZone.getOffset(start) != offset) {
+            // First millisecond with this offset is in (start, wallMillis]
+            long lo = start;
+            long hi = wallMillis;
+            while (hi - lo > 1) {
+                long mid = (lo + hi) >>> 1;
+                if (timeZone.getOffset(mid) == offset) hi = mid; else lo = mid;
+            }
+            start = hi;
+        }
+        if (timeZone.getOffset(end - 1) != offset) {
+            // First millisecond with another offset is in (wallMillis, end - 1]
+            long lo = wallMillis;
+            long hi = end - 1;
+            while (hi - lo > 1) {
+                long mid = (lo + hi) >>> 1;
+                if (timeZone.getOffset(mid) == offset) lo = mid; else hi = mid;
+            }
+            end = hi;
+        }
+
+        cachedOffset = offset;
+        cachedStart = start;
+        cachedEnd = end;
+    }
+
+    private void putTwoDigits(int pos, int value) {
+        buffer[pos] = (char) ('0' + value / 10);
+        buffer[pos + 1] = (char) ('0' + value % 10);
+    }
+}
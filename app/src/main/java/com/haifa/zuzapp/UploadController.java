@@ -0,0 +1,175 @@
+package com.haifa.zuzapp;
+
+/**
+ * Adaptive concurrency and batch-size controller for movement uploads (AIMD).
+ *
+ * The in-flight window grows by roughly one request per round trip while
+ * latency stays near the best observed and the error rate is low, and is
+ * halved on congestion signals (timeouts, 429, 5xx), at most once per round
+ * trip. Batch size follows the same rule but only grows while uploads are
+ * backlogged, so a keeping-up uploader sends small, fresh batches.
+ *
+ * Times are passed in (System.nanoTime() based) so the controller can be
+ * driven deterministically from tests.
+ */
+public class UploadController {
+
+    public static final int MIN_WINDOW = 1;
+    public static final int MAX_WINDOW = 16;
+    public static final int INITIAL_WINDOW = 2;
+
+    public static final int MIN_BATCH_SIZE = 20;
+    public static final int MAX_BATCH_SIZE = 500;
+    private static final int BATCH_SIZE_STEP = 20;
+
+    private static final double DECREASE_FACTOR = 0.5;
+
+    // Healthy while smoothed latency stays within this multiple of the best seen,
+    // or below the absolute floor (small requests on a fast link are noisy)
+    private static final double LATENCY_TOLERANCE = 2.5;
+    private static final double LATENCY_FLOOR_MS = 250.0;
+    private static final double ERROR_RATE_LIMIT = 0.1;
+
+    private static final double LATENCY_ALPHA = 0.2;
+    private static final double ERROR_ALPHA = 0.1;
+    private static final double THROUGHPUT_ALPHA = 0.3;
+    private static final double BASE_LATENCY_DRIFT = 0.002;
+    private static final long THROUGHPUT_INTERVAL_NANOS = 1_000_000_000L;
+    private static final long MIN_RECOVERY_NANOS = 100_000_000L;
+
+    private double window = INITIAL_WINDOW;
+    private int batchSize = MIN_BATCH_SIZE;
+    private int inFlight;
+
+    private double smoothedLatencyMs = -1;
+    private double baseLatencyMs = Double.MAX_VALUE;
+    private double errorRate;
+    private long lastDecreaseNanos;
+    private boolean hasDecreased;
+
+    private long throughputIntervalStart;
+    private boolean throughputStarted;
+    private long recordsInInterval;
+    private double throughputRecordsPerSec;
+    private long totalRecordsAcked;
+
+    /**
+     * Reserve an in-flight slot if the window allows another request
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight < (int) window) {
+            inFlight++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * A request completed with 2xx
+     *
+     * @param backlogged whether more batches were waiting for a slot
+     */
+    public synchronized void onSuccess(int records, long latencyNanos, boolean backlogged, long nowNanos) {
+        release();
+        double latencyMs = latencyNanos / 1_000_000.0;
+        smoothedLatencyMs = smoothedLatencyMs < 0
+                ? latencyMs
+                : smoothedLatencyMs + LATENCY_ALPHA * (latencyMs - smoothedLatencyMs);
+        if (latencyMs < baseLatencyMs) {
+            baseLatencyMs = latencyMs;
+        } else {
+            // Drift slowly upwards so a permanent route change is eventually accepted
+            baseLatencyMs += BASE_LATENCY_DRIFT * (latencyMs - baseLatencyMs);
+        }
+        errorRate *= (1 - ERROR_ALPHA);
+        recordThroughput(records, nowNanos);
+
+        if (isHealthy()) {
+            window = Math.min(MAX_WINDOW, window + 1.0 / window);
+            if (backlogged) {
+                batchSize = Math.min(MAX_BATCH_SIZE, batchSize + BATCH_SIZE_STEP);
+            } else {
+                batchSize = Math.max(MIN_BATCH_SIZE, batchSize - BATCH_SIZE_STEP);
+            }
+        }
+    }
+
+    /**
+     * A request failed with a congestion signal: timeout, 429 or 5xx
+     */
+    public synchronized void onCongestion(long nowNanos) {
+        release();
+        errorRate += ERROR_ALPHA * (1 - errorRate);
+
+        long recoveryNanos = Math.max(MIN_RECOVERY_NANOS, (long) (smoothedLatencyMs * 1_000_000));
+        if (!hasDecreased || nowNanos - lastDecreaseNanos >= recoveryNanos) {
+            window = Math.max(MIN_WINDOW, window * DECREASE_FACTOR);
+            batchSize = Math.max(MIN_BATCH_SIZE, (int) (batchSize * DECREASE_FACTOR));
+            lastDecreaseNanos = nowNanos;
+            hasDecreased = true;
+        }
+    }
+
+    /**
+     * A request failed for another reason (connection reset, 4xx, ...)
+     */
+    public synchronized void onError(long nowNanos) {
+        release();
+        errorRate += ERROR_ALPHA * (1 - errorRate);
+    }
+
+    private void release() {
+        if (inFlight > 0) inFlight--;
+    }
+
+    private boolean isHealthy() {
+        double latencyBudget = Math.max(LATENCY_FLOOR_MS, baseLatencyMs * LATENCY_TOLERANCE);
+        return errorRate < ERROR_RATE_LIMIT && smoothedLatencyMs <= latencyBudget;
+    }
+
+    private void recordThroughput(int records, long nowNanos) {
+        totalRecordsAcked += records;
+        if (!throughputStarted) {
+            throughputStarted = true;
+            throughputIntervalStart = nowNanos;
+        }
+        recordsInInterval += records;
+        long elapsed = nowNanos - throughputIntervalStart;
+        if (elapsed >= THROUGHPUT_INTERVAL_NANOS) {
+            double rate = recordsInInterval * 1_000_000_000.0 / elapsed;
+            throughputRecordsPerSec = throughputRecordsPerSec == 0
+                    ? rate
+                    : throughputRecordsPerSec + THROUGHPUT_ALPHA * (rate - throughputRecordsPerSec);
+            throughputIntervalStart = nowNanos;
+            recordsInInterval = 0;
+        }
+    }
+
+    public synchronized int getWindow() {
+        return (int) window;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    public synchronized double getSmoothedLatencyMs() {
+        return Math.max(0, smoothedLatencyMs);
+    }
+
+    public synchronized double getErrorRate() {
+        return errorRate;
+    }
+
+    public synchronized double getThroughputRecordsPerSec() {
+        return throughputRecordsPerSec;
+    }
+
+    public synchronized long getTotalRecordsAcked() {
+        return totalRecordsAcked;
+    }
+}
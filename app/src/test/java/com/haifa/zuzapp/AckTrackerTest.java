@@ -0,0 +1,40 @@
+package com.haifa.zuzapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AckTrackerTest {
+
+    @Test
+    public void advancesOnContiguousAcks() {
+        AckTracker tracker = new AckTracker(0);
+        tracker.ack(1, 20);
+        tracker.ack(21, 40);
+        assertEquals(40, tracker.getHighWaterMark());
+        assertEquals(0, tracker.getPendingRangeCount());
+    }
+
+    @Test
+    public void holdsOutOfOrderAcksUntilGapCloses() {
+        AckTracker tracker = new AckTracker(0);
+        tracker.ack(41, 60);
+        tracker.ack(21, 40);
+        assertEquals(0, tracker.getHighWaterMark());
+        assertEquals(2, tracker.getPendingRangeCount());
+
+        tracker.ack(1, 20);
+        assertEquals(60, tracker.getHighWaterMark());
+        assertEquals(0, tracker.getPendingRangeCount());
+    }
+
+    @Test
+    public void ignoresDuplicateAcks() {
+        AckTracker tracker = new AckTracker(0);
+        tracker.ack(1, 20);
+        tracker.ack(1, 20);
+        tracker.ack(5, 10);
+        assertEquals(20, tracker.getHighWaterMark());
+        assertEquals(0, tracker.getPendingRangeCount());
+    }
+}
@@ -0,0 +1,281 @@
+package com.haifa.zuzapp;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BacklogSyncTest {
+
+    private FakeSupabaseServer server;
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        server = FakeSupabaseServer.start();
+        directory = Files.createTempDirectory("zuzapp-sync").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+        for (File f : directory.listFiles()) f.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void deferredSessionIsSilentWhileRecordingAndSyncedLater() throws Exception {
+        MovementLogger logger = new MovementLogger(server.newClient());
+        logger.setUploadMode(MovementLogger.UploadMode.DEFERRED);
+        record(logger, "later", 12_000);
+        logger.cleanup();
+
+        assertTrue(server.getRequests().isEmpty());
+        assertTrue(logger.hasUnsyncedData());
+
+        SupabaseClient client = server.newClient();
+        client.setGzipBacklog(true);
+        BacklogSync sync = new BacklogSync(client, directory);
+        assertEquals(BacklogSync.Outcome.COMPLETE, sync.run(() -> false));
+        client.shutdown();
+
+        assertEquals(12_000, server.getMovementRowCount());
+        assertTrue(server.hasMovementRow("later", "EXP", 1));
+        assertTrue(server.hasMovementRow("later", "EXP", 12_000));
+        assertEquals("completed", server.getSession("later", "EXP").getString("status"));
+        // 3 chunks of up to 5000 records plus the session row
+        assertEquals(4, sync.getRequestsSent());
+        assertEquals(3, server.getGzipRequests());
+        assertEquals(0, SessionSyncState.findAll(directory).size());
+
+        JSONObject row = new JSONArray(server.getRequests().get(0).body).getJSONObject(0);
+        assertEquals(1, row.getLong("seq"));
+        assertTrue(row.has("calibrated_yaw"));
+    }
+
+    @Test
+    public void interruptedSyncResumesFromSavedProgress() throws Exception {
+        MovementLogger logger = new MovementLogger(server.newClient());
+        logger.setUploadMode(MovementLogger.UploadMode.DEFERRED);
+        record(logger, "resume", 10_000);
+        logger.cleanup();
+
+        SupabaseClient client = server.newClient();
+        int[] polls = {0};
+        BacklogSync first = new BacklogSync(client, directory).setChunkRecords(1000);
+        assertEquals(BacklogSync.Outcome.STOPPED, first.run(() -> ++polls[0] > 3));
+        assertEquals(3000, server.getMovementRowCount());
+
+        List<SessionSyncState> states = SessionSyncState.findAll(directory);
+        assertEquals(1, states.size());
+        assertEquals(3000, states.get(0).syncedSeq);
+        assertTrue(states.get(0).csvOffset > 0);
+
+        BacklogSync second = new BacklogSync(client, directory).setChunkRecords(1000);
+        assertEquals(BacklogSync.Outcome.COMPLETE, second.run(() -> false));
+        client.shutdown();
+
+        assertEquals(10_000, server.getMovementRowCount());
+        assertEquals(0, server.getDuplicateRowsReceived());
+        assertEquals(7000, second.getRecordsSent());
+    }
+
+    @Test
+    public void failedRequestLeavesProgressForRetry() throws Exception {
+        MovementLogger logger = new MovementLogger(server.newClient());
+        logger.setUploadMode(MovementLogger.UploadMode.DEFERRED);
+        record(logger, "flaky", 3000);
+        logger.cleanup();
+
+        SupabaseClient client = server.newClient();
+        server.setErrorRate(1.0, 503);
+        assertEquals(BacklogSync.Outcome.RETRY, new BacklogSync(client, directory).run(() -> false));
+        assertEquals(1, SessionSyncState.findAll(directory).size());
+
+        server.setErrorRate(0, 503);
+        assertEquals(BacklogSync.Outcome.COMPLETE, new BacklogSync(client, directory).run(() -> false));
+        client.shutdown();
+        assertEquals(3000, server.getMovementRowCount());
+    }
+
+    @Test
+    public void sessionsAreMergedIntoOneRequest() throws Exception {
+        MovementLogger logger = new MovementLogger(server.newClient());
+        logger.setUploadMode(MovementLogger.UploadMode.DEFERRED);
+        record(logger, "a", 1500);
+        record(logger, "b", 1500);
+        logger.cleanup();
+
+        SupabaseClient client = server.newClient();
+        BacklogSync sync = new BacklogSync(client, directory);
+        assertEquals(BacklogSync.Outcome.COMPLETE, sync.run(() -> false));
+        client.shutdown();
+
+        assertEquals(3000, server.getMovementRowCount());
+        // One records chunk for both sessions, then one row per session
+        assertEquals(3, sync.getRequestsSent());
+        assertNotNull(server.getSession("a", "EXP"));
+        assertNotNull(server.getSession("b", "EXP"));
+    }
+
+    @Test
+    public void fallsBackToPlainBodiesWhenGzipIsRejected() throws Exception {
+        server.setAcceptGzip(false);
+        MovementLogger logger = new MovementLogger(server.newClient());
+        logger.setUploadMode(MovementLogger.UploadMode.DEFERRED);
+        record(logger, "plain", 12_000);
+        logger.cleanup();
+
+        SupabaseClient client = server.newClient();
+        client.setGzipBacklog(true);
+        assertEquals(BacklogSync.Outcome.COMPLETE, new BacklogSync(client, directory).run(() -> false));
+        client.shutdown();
+
+        assertEquals(12_000, server.getMovementRowCount());
+        assertEquals(0, server.getGzipRequests());
+        assertEquals(1, server.getRejectedGzipRequests());
+
+        // The refusal is remembered, so the next run does not ask again
+        logger = new MovementLogger(server.newClient());
+        logger.setUploadMode(MovementLogger.UploadMode.DEFERRED);
+        record(logger, "plain-again", 1000);
+        logger.cleanup();
+
+        client = server.newClient();
+        client.setGzipBacklog(true);
+        assertEquals(BacklogSync.Outcome.COMPLETE, new BacklogSync(client, directory).run(() -> false));
+        client.shutdown();
+
+        assertTrue(server.hasMovementRow("plain-again", "EXP", 1000));
+        assertEquals(1, server.getRejectedGzipRequests());
+    }
+
+    @Test
+    public void badRequestKeepsGzip() throws Exception {
+        MovementLogger logger = new MovementLogger(server.newClient());
+        logger.setUploadMode(MovementLogger.UploadMode.DEFERRED);
+        record(logger, "rejected", 1000);
+        logger.cleanup();
+
+        // A 400 about the rows is not a verdict on compression
+        server.setErrorRate(1.0, 400).setErrorBody("{\"message\":\"invalid input syntax\"}");
+        SupabaseClient client = server.newClient();
+        client.setGzipBacklog(true);
+        assertEquals(BacklogSync.Outcome.RETRY, new BacklogSync(client, directory).run(() -> false));
+        assertTrue(client.isGzipBacklog());
+        client.shutdown();
+        assertFalse(new File(directory, BacklogSync.GZIP_REJECTED_FILE).exists());
+    }
+
+    @Test
+    public void fullSessionRecordedOfflineIsCompleted() throws Exception {
+        // Live uploads go to a port nobody listens on
+        SupabaseClient offline = new SupabaseClient("http://127.0.0.1:1", "test-anon-key");
+        MovementLogger logger = new MovementLogger(offline);
+        record(logger, "offline", 2000);
+        logger.cleanup();
+        assertTrue(logger.hasUnsyncedData());
+
+        SupabaseClient client = server.newClient();
+        assertEquals(BacklogSync.Outcome.COMPLETE, new BacklogSync(client, directory).run(() -> false));
+        client.shutdown();
+
+        assertEquals(2000, server.getMovementRowCount());
+        JSONObject session = server.getSession("offline", "EXP");
+        assertEquals("completed", session.getString("status"));
+        assertTrue(session.has("start_time"));
+        assertEquals(0, SessionSyncState.findAll(directory).size());
+    }
+
+    @Test
+    public void boutsOnlySessionIsDoneOnceItsSessionCallsSucceed() throws Exception {
+        SupabaseClient client = server.newClient();
+        MovementLogger logger = new MovementLogger(client);
+        logger.setUploadMode(MovementLogger.UploadMode.BOUTS_ONLY);
+        record(logger, "bouts", 4000);
+
+        assertFalse(logger.hasUnsyncedData());
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!SessionSyncState.findAll(directory).isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, SessionSyncState.findAll(directory).size());
+        assertEquals("completed", server.getSession("bouts", "EXP").getString("status"));
+        logger.cleanup();
+    }
+
+    @Test
+    public void commasAndNonAsciiInIdsDoNotShiftColumns() throws Exception {
+        MovementLogger logger = new MovementLogger(server.newClient());
+        logger.setUploadMode(MovementLogger.UploadMode.DEFERRED);
+        record(logger, "Zo\u00eb,K", "day 1, pm", 1500);
+        logger.cleanup();
+
+        SupabaseClient client = server.newClient();
+        assertEquals(BacklogSync.Outcome.COMPLETE, new BacklogSync(client, directory).run(() -> false));
+        client.shutdown();
+
+        assertEquals(1500, server.getMovementRowCount());
+        assertTrue(server.hasMovementRow("day 1, pm", "Zo\u00eb,K", 1500));
+        assertEquals(0, SessionSyncState.findAll(directory).size());
+    }
+
+    @Test
+    public void unreadableSessionIsQuarantinedWithoutBlockingOthers() throws Exception {
+        MovementLogger logger = new MovementLogger(server.newClient());
+        logger.setUploadMode(MovementLogger.UploadMode.DEFERRED);
+        record(logger, "broken", 2000);
+        record(logger, "fine", 2000);
+        logger.cleanup();
+
+        // Damage row 1001 of the first session
+        File csv = null;
+        for (File f : directory.listFiles()) {
+            if (f.getName().contains("__broken__") && f.getName().endsWith(".csv")) csv = f;
+        }
+        List<String> lines = Files.readAllLines(csv.toPath());
+        lines.set(1001, lines.get(1001).replaceFirst(",[0-9]+$", ",x"));
+        Files.write(csv.toPath(), lines);
+
+        SupabaseClient client = server.newClient();
+        assertEquals(BacklogSync.Outcome.COMPLETE, new BacklogSync(client, directory).run(() -> false));
+
+        // Everything before the bad row, and all of the other session
+        assertEquals(3000, server.getMovementRowCount());
+        assertTrue(server.hasMovementRow("broken", "EXP", 1000));
+        assertFalse(server.hasMovementRow("broken", "EXP", 1001));
+        assertEquals("completed", server.getSession("fine", "EXP").getString("status"));
+
+        List<SessionSyncState> states = SessionSyncState.findAll(directory);
+        assertEquals(1, states.size());
+        assertNotNull(states.get(0).quarantined);
+        assertEquals(1000, states.get(0).syncedSeq);
+
+        // Later runs leave it alone
+        BacklogSync again = new BacklogSync(client, directory);
+        assertEquals(BacklogSync.Outcome.COMPLETE, again.run(() -> false));
+        assertEquals(0, again.getRequestsSent());
+        client.shutdown();
+    }
+
+    private void record(MovementLogger logger, String sessionId, int samples) throws Exception {
+        record(logger, "EXP", sessionId, samples);
+    }
+
+    private void record(MovementLogger logger, String code, String sessionId, int samples) throws Exception {
+        logger.startSession(directory, code, sessionId, new SessionClock(0, System.currentTimeMillis()));
+        SampleSource source = SampleSource.synthetic(200, sessionId.hashCode());
+        SampleSource.Sample sample = new SampleSource.Sample();
+        for (int i = 0; i < samples && source.next(sample); i++) {
+            sample.logTo(logger, sessionId, code);
+        }
+        logger.stopSession();
+    }
+}
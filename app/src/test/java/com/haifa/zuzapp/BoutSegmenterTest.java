@@ -0,0 +1,95 @@
+package com.haifa.zuzapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BoutSegmenterTest {
+
+    private static final long PERIOD = 5_000_000L; // 200 Hz
+
+    private final BoutSegmenter segmenter = new BoutSegmenter();
+    private final List<BoutSegmenter.Bout> bouts = new ArrayList<>();
+    private long now;
+
+    @Test
+    public void swivelStopSwivelBackGivesTwoBouts() {
+        still(0.5);
+        move(60, 1.0);
+        still(1.0);
+        move(-40, 0.5);
+        still(1.0);
+
+        assertEquals(2, bouts.size());
+        BoutSegmenter.Bout first = bouts.get(0);
+        assertEquals(1, first.index);
+        assertEquals(1, first.getDirection());
+        assertEquals(60, first.netRotation, 0.5);
+        assertEquals(60, first.peakVelocity, 0.01);
+        assertEquals(1.0, first.getDurationNanos() / 1e9, 0.01);
+
+        BoutSegmenter.Bout second = bouts.get(1);
+        assertEquals(2, second.index);
+        assertEquals(-1, second.getDirection());
+        assertEquals(-20, second.netRotation, 0.5);
+        assertEquals(20, second.absoluteRotation, 0.5);
+    }
+
+    @Test
+    public void shortPauseDoesNotSplitBout() {
+        move(30, 0.5);
+        still(0.1);
+        move(30, 0.5);
+        still(1.0);
+
+        assertEquals(1, bouts.size());
+        assertEquals(30, bouts.get(0).netRotation, 0.5);
+    }
+
+    @Test
+    public void quickReversalSplitsBout() {
+        move(30, 0.5);
+        still(0.1);
+        move(-30, 0.5);
+        still(1.0);
+
+        assertEquals(2, bouts.size());
+    }
+
+    @Test
+    public void slowDriftBelowStartVelocityIsIgnored() {
+        move(2, 3.0);
+        still(1.0);
+        assertTrue(bouts.isEmpty());
+    }
+
+    @Test
+    public void flushClosesOpenBout() {
+        move(45, 1.0);
+        assertTrue(bouts.isEmpty());
+        BoutSegmenter.Bout bout = segmenter.flush();
+        assertNotNull(bout);
+        assertEquals(45, bout.netRotation, 0.5);
+        assertNull(segmenter.flush());
+    }
+
+    private void move(float velocity, double seconds) {
+        feed(velocity, seconds);
+    }
+
+    private void still(double seconds) {
+        feed(0, seconds);
+    }
+
+    private void feed(float velocity, double seconds) {
+        long samples = Math.round(seconds * 1e9 / PERIOD);
+        for (long i = 0; i < samples; i++) {
+            now += PERIOD;
+            BoutSegmenter.Bout bout = segmenter.update(now, velocity, velocity * PERIOD / 1e9f, 1f, -1f);
+            if (bout != null) bouts.add(bout);
+        }
+    }
+}
@@ -0,0 +1,587 @@
+package com.haifa.zuzapp;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Embedded stand-in for the Supabase PostgREST endpoints used by SupabaseClient.
+ *
+ * Accepts POST/PATCH /rest/v1/sessions (POST may be an upsert under
+ * Prefer: resolution=merge-duplicates) and POST /rest/v1/movement_records and
+ * /rest/v1/movement_bouts,
+ * stores what it receives, and can inject latency, a bandwidth cap, HTTP
+ * errors and dropped connections. Movement rows are keyed on
+ * (session_id, experimenter_code, seq) like the real table: duplicates are
+ * skipped under Prefer: resolution=ignore-duplicates and rejected with 409
+ * otherwise. Request bodies may be gzip-compressed (Content-Encoding: gzip)
+ * unless that is switched off to mimic a gateway that rejects it.
+ *
+ * The desktop JVM's HttpURLConnection has no PATCH, so clients from
+ * newClient() send it as POST with X-HTTP-Method-Override (see
+ * PatchTunnelConnection); the server treats that header as the method.
+ */
+public class FakeSupabaseServer implements Closeable {
+
+    // Request handler threads, so measurements can tell them from the client's
+    public static final String THREAD_NAME_PREFIX = "fake-supabase-";
+
+    /**
+     * One request as received (after fault injection decided to answer it)
+     */
+    public static class Request {
+        public final String method;
+        public final String path;
+        public final String query;
+        public final String prefer;
+        public final String body;
+        public final long receivedNanos;
+
+        Request(String method, String path, String query, String prefer, String body, long receivedNanos) {
+            this.method = method;
+            this.path = path;
+            this.query = query;
+            this.prefer = prefer;
+            this.body = body;
+            this.receivedNanos = receivedNanos;
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // Fault injection (all may be changed while running)
+    private volatile long minLatencyMs;
+    private volatile long maxLatencyMs;
+    private volatile long bandwidthBytesPerSec;
+    private volatile double errorRate;
+    private volatile int errorStatus = 503;
+    // null: injected errors carry no body, like many gateways and proxies
+    private volatile String errorBody = "{\"message\":\"injected failure\"}";
+    private volatile double resetRate;
+    // Off for soak runs: keep counters only, so the server's own memory stays flat
+    private volatile boolean retainRows = true;
+    private volatile boolean acceptGzip = true;
+
+    private final List<Request> requests = new ArrayList<>();
+    // Rows are keyed like the real tables, on "session/code/recording"
+    private final ConcurrentHashMap<String, JSONObject> sessions = new ConcurrentHashMap<>();
+    // "session/code/recording/seq" -> System.nanoTime() when the row was first stored
+    private final ConcurrentHashMap<String, Long> movementRows = new ConcurrentHashMap<>();
+    // "session/code/recording/bout_index" -> bout row
+    private final ConcurrentHashMap<String, JSONObject> movementBouts = new ConcurrentHashMap<>();
+    // "session/code" -> recording_id last stored, for lookups by session alone
+    private final ConcurrentHashMap<String, String> latestRecording = new ConcurrentHashMap<>();
+
+    private final AtomicLong movementRowsReceived = new AtomicLong();
+    private final AtomicLong duplicateRowsReceived = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong injectedResets = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong gzipRequests = new AtomicLong();
+    private final AtomicLong rejectedGzipRequests = new AtomicLong();
+
+    private FakeSupabaseServer(HttpServer server) {
+        this.server = server;
+        AtomicLong threads = new AtomicLong();
+        this.executor = Executors.newCachedThreadPool(
+                r -> new Thread(r, THREAD_NAME_PREFIX + threads.incrementAndGet()));
+        server.setExecutor(executor);
+        server.createContext("/rest/v1/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Start on an ephemeral loopback port
+     */
+    public static FakeSupabaseServer start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        return new FakeSupabaseServer(server);
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public SupabaseClient newClient() {
+        return new SupabaseClient(getUrl(), "test-anon-key",
+                url -> new PatchTunnelConnection((HttpURLConnection) url.openConnection()));
+    }
+
+    // ---------------------------------------------------------
+    // Fault injection
+    // ---------------------------------------------------------
+
+    public FakeSupabaseServer setLatencyMillis(long min, long max) {
+        this.minLatencyMs = min;
+        this.maxLatencyMs = Math.max(min, max);
+        return this;
+    }
+
+    /**
+     * Cap request upload speed (0 = unlimited)
+     */
+    public FakeSupabaseServer setBandwidthBytesPerSec(long bytesPerSec) {
+        this.bandwidthBytesPerSec = bytesPerSec;
+        return this;
+    }
+
+    /**
+     * Answer this fraction of requests with the given status instead of handling them
+     */
+    public FakeSupabaseServer setErrorRate(double rate, int status) {
+        this.errorRate = rate;
+        this.errorStatus = status;
+        return this;
+    }
+
+    /**
+     * Body sent with injected errors (null for none)
+     */
+    public FakeSupabaseServer setErrorBody(String body) {
+        this.errorBody = body;
+        return this;
+    }
+
+    /**
+     * Drop this fraction of connections without sending a response
+     */
+    public FakeSupabaseServer setResetRate(double rate) {
+        this.resetRate = rate;
+        return this;
+    }
+
+    /**
+     * Keep every request and movement row (default), or only count them
+     */
+    public FakeSupabaseServer setRetainRows(boolean retainRows) {
+        this.retainRows = retainRows;
+        return this;
+    }
+
+    /**
+     * Inflate gzip request bodies (default), or answer them with 415
+     */
+    public FakeSupabaseServer setAcceptGzip(boolean acceptGzip) {
+        this.acceptGzip = acceptGzip;
+        return this;
+    }
+
+    // ---------------------------------------------------------
+    // Handling
+    // ---------------------------------------------------------
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = readBody(exchange.getRequestBody());
+            long receivedNanos = System.nanoTime();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+
+            if (resetRate > 0 && random.nextDouble() < resetRate) {
+                injectedResets.incrementAndGet();
+                // Closing before the response headers drops the connection
+                exchange.close();
+                return;
+            }
+
+            long latency = minLatencyMs;
+            if (maxLatencyMs > minLatencyMs) {
+                latency += random.nextLong(maxLatencyMs - minLatencyMs + 1);
+            }
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+
+            if (errorRate > 0 && random.nextDouble() < errorRate) {
+                injectedErrors.incrementAndGet();
+                respond(exchange, errorStatus, errorBody);
+                return;
+            }
+
+            if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                if (!acceptGzip) {
+                    rejectedGzipRequests.incrementAndGet();
+                    respond(exchange, 415, "{\"message\":\"unsupported content encoding\"}");
+                    return;
+                }
+                gzipRequests.incrementAndGet();
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                    body = readAll(in);
+                }
+            }
+
+            String method = exchange.getRequestMethod();
+            String override = exchange.getRequestHeaders().getFirst("X-HTTP-Method-Override");
+            if (override != null) {
+                method = override;
+            }
+            String path = exchange.getRequestURI().getPath();
+            String query = exchange.getRequestURI().getRawQuery();
+            String prefer = exchange.getRequestHeaders().getFirst("Prefer");
+            String text = new String(body, StandardCharsets.UTF_8);
+            if (retainRows) {
+                synchronized (requests) {
+                    requests.add(new Request(method, path, query, prefer, text, receivedNanos));
+                }
+            }
+
+            if (path.equals("/rest/v1/sessions") && method.equals("POST")) {
+                JSONObject session = new JSONObject(text);
+                String key = recordingKey(session);
+                JSONObject existing = sessions.get(key);
+                if (existing != null && prefer != null && prefer.contains("resolution=merge-duplicates")) {
+                    for (String field : session.keySet()) {
+                        existing.put(field, session.get(field));
+                    }
+                } else {
+                    sessions.put(key, session);
+                }
+                respond(exchange, 201, null);
+            } else if (path.equals("/rest/v1/sessions") && method.equals("PATCH")) {
+                Map<String, String> filters = parseEqFilters(query);
+                JSONObject session = sessions.get(filters.get("session_id") + "/" + filters.get("experimenter_code")
+                        + "/" + filters.getOrDefault("recording_id", ""));
+                if (session != null) {
+                    JSONObject update = new JSONObject(text);
+                    for (String key : update.keySet()) {
+                        session.put(key, update.get(key));
+                    }
+                }
+                respond(exchange, 204, null);
+            } else if (path.equals("/rest/v1/movement_records") && method.equals("POST")) {
+                boolean ignoreDuplicates = prefer != null && prefer.contains("resolution=ignore-duplicates");
+                respond(exchange, storeMovementRows(text, ignoreDuplicates, receivedNanos), null);
+            } else if (path.equals("/rest/v1/movement_bouts") && method.equals("POST")) {
+                JSONArray bouts = new JSONArray(text);
+                for (int i = 0; i < bouts.length(); i++) {
+                    JSONObject bout = bouts.getJSONObject(i);
+                    movementBouts.putIfAbsent(recordingKey(bout) + "/" + bout.getLong("bout_index"), bout);
+                }
+                respond(exchange, 201, null);
+            } else {
+                respond(exchange, 404, "{\"message\":\"no route\"}");
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+        } catch (Exception e) {
+            respond(exchange, 400, "{\"message\":\"" + e.getMessage() + "\"}");
+        }
+    }
+
+    private int storeMovementRows(String text, boolean ignoreDuplicates, long receivedNanos) {
+        JSONArray rows = text.trim().startsWith("[") ? new JSONArray(text) : new JSONArray().put(new JSONObject(text));
+        if (!retainRows) {
+            movementRowsReceived.addAndGet(rows.length());
+            return 201;
+        }
+
+        List<String> keys = new ArrayList<>(rows.length());
+        for (int i = 0; i < rows.length(); i++) {
+            JSONObject row = rows.getJSONObject(i);
+            String key = recordingKey(row) + "/" + row.optLong("seq", -1 - movementRowsReceived.get() - i);
+            if (!ignoreDuplicates && movementRows.containsKey(key)) {
+                return 409;
+            }
+            keys.add(key);
+        }
+
+        movementRowsReceived.addAndGet(keys.size());
+        for (String key : keys) {
+            if (movementRows.putIfAbsent(key, receivedNanos) != null) {
+                duplicateRowsReceived.incrementAndGet();
+            }
+        }
+        return 201;
+    }
+
+    private byte[] readBody(InputStream in) throws IOException, InterruptedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        long start = System.nanoTime();
+        long total = 0;
+        int n;
+        while ((n = in.read(chunk)) != -1) {
+            out.write(chunk, 0, n);
+            total += n;
+            long limit = bandwidthBytesPerSec;
+            if (limit > 0) {
+                long dueNanos = total * 1_000_000_000L / limit;
+                long aheadMillis = (dueNanos - (System.nanoTime() - start)) / 1_000_000L;
+                if (aheadMillis > 0) {
+                    Thread.sleep(aheadMillis);
+                }
+            }
+        }
+        bytesReceived.addAndGet(total);
+        return out.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int n;
+        while ((n = in.read(chunk)) != -1) {
+            out.write(chunk, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * "session/code/recording" of a row; rows without recording_id share ""
+     */
+    private String recordingKey(JSONObject row) {
+        String sessionKey = row.getString("session_id") + "/" + row.getString("experimenter_code");
+        String recording = row.optString("recording_id", "");
+        latestRecording.put(sessionKey, recording);
+        return sessionKey + "/" + recording;
+    }
+
+    private String latestKey(String sessionId, String experimenterCode) {
+        String sessionKey = sessionId + "/" + experimenterCode;
+        return sessionKey + "/" + latestRecording.getOrDefault(sessionKey, "");
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+        } else {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+        exchange.close();
+    }
+
+    /**
+     * Parse PostgREST "column=eq.value" filters
+     */
+    private static Map<String, String> parseEqFilters(String query) {
+        Map<String, String> filters = new HashMap<>();
+        if (query == null) return filters;
+        for (String part : query.split("&")) {
+            int eq = part.indexOf('=');
+            if (eq < 0) continue;
+            String value = URLDecoder.decode(part.substring(eq + 1), StandardCharsets.UTF_8);
+            if (value.startsWith("eq.")) {
+                filters.put(part.substring(0, eq), value.substring(3));
+            }
+        }
+        return filters;
+    }
+
+    // ---------------------------------------------------------
+    // What was received
+    // ---------------------------------------------------------
+
+    public List<Request> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    /**
+     * Session row of the latest recording under this session id
+     */
+    public JSONObject getSession(String sessionId, String experimenterCode) {
+        return sessions.get(latestKey(sessionId, experimenterCode));
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Distinct movement rows stored
+     */
+    public int getMovementRowCount() {
+        return movementRows.size();
+    }
+
+    /**
+     * Whether the latest recording under this session id has the row
+     */
+    public boolean hasMovementRow(String sessionId, String experimenterCode, long seq) {
+        return movementRows.containsKey(latestKey(sessionId, experimenterCode) + "/" + seq);
+    }
+
+    /**
+     * System.nanoTime() at which the row was first stored, or -1
+     */
+    public long getFirstReceiptNanos(String sessionId, String experimenterCode, long seq) {
+        Long nanos = movementRows.get(latestKey(sessionId, experimenterCode) + "/" + seq);
+        return nanos != null ? nanos : -1;
+    }
+
+    /**
+     * Distinct movement bouts stored, ordered by session and bout_index
+     */
+    public List<JSONObject> getMovementBouts() {
+        List<JSONObject> bouts = new ArrayList<>(movementBouts.values());
+        bouts.sort((a, b) -> {
+            int bySession = a.getString("session_id").compareTo(b.getString("session_id"));
+            return bySession != 0 ? bySession : Long.compare(a.getLong("bout_index"), b.getLong("bout_index"));
+        });
+        return bouts;
+    }
+
+    public long getMovementRowsReceived() {
+        return movementRowsReceived.get();
+    }
+
+    public long getDuplicateRowsReceived() {
+        return duplicateRowsReceived.get();
+    }
+
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    public long getInjectedResets() {
+        return injectedResets.get();
+    }
+
+    /**
+     * Bytes on the wire (compressed size for gzip requests)
+     */
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getGzipRequests() {
+        return gzipRequests.get();
+    }
+
+    public long getRejectedGzipRequests() {
+        return rejectedGzipRequests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Sends PATCH as POST plus X-HTTP-Method-Override and passes everything
+     * else SupabaseClient uses straight through
+     */
+    static class PatchTunnelConnection extends HttpURLConnection {
+        private final HttpURLConnection delegate;
+
+        PatchTunnelConnection(HttpURLConnection delegate) {
+            super(delegate.getURL());
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void setRequestMethod(String method) throws ProtocolException {
+            this.method = method;
+            if (method.equals("PATCH")) {
+                delegate.setRequestMethod("POST");
+                delegate.setRequestProperty("X-HTTP-Method-Override", "PATCH");
+            } else {
+                delegate.setRequestMethod(method);
+            }
+        }
+
+        @Override
+        public void setRequestProperty(String key, String value) {
+            delegate.setRequestProperty(key, value);
+        }
+
+        @Override
+        public void setConnectTimeout(int timeout) {
+            delegate.setConnectTimeout(timeout);
+        }
+
+        @Override
+        public void setReadTimeout(int timeout) {
+            delegate.setReadTimeout(timeout);
+        }
+
+        @Override
+        public void setDoOutput(boolean doOutput) {
+            delegate.setDoOutput(doOutput);
+        }
+
+        @Override
+        public void setFixedLengthStreamingMode(int contentLength) {
+            delegate.setFixedLengthStreamingMode(contentLength);
+        }
+
+        @Override
+        public void setChunkedStreamingMode(int chunkLength) {
+            delegate.setChunkedStreamingMode(chunkLength);
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return delegate.getOutputStream();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return delegate.getInputStream();
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return delegate.getErrorStream();
+        }
+
+        @Override
+        public int getResponseCode() throws IOException {
+            return delegate.getResponseCode();
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            return delegate.getHeaderField(name);
+        }
+
+        @Override
+        public void connect() throws IOException {
+            delegate.connect();
+        }
+
+        @Override
+        public void disconnect() {
+            delegate.disconnect();
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return delegate.usingProxy();
+        }
+    }
+}
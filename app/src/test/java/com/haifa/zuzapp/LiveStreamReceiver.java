@@ -0,0 +1,282 @@
+package com.haifa.zuzapp;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Reference receiver for LiveStreamSink frames: decodes datagrams, keeps the
+ * most recent samples for plotting and measures end-to-end latency (wall
+ * time of arrival minus the sample's wall time).
+ *
+ * Run from the command line to watch a phone on the same network:
+ * <pre>
+ *   ./gradlew :app:testClasses
+ *   java -cp app/build/intermediates/javac/debugUnitTest/classes:app/build/intermediates/javac/debug/classes \
+ *       com.haifa.zuzapp.LiveStreamReceiver [port]
+ * </pre>
+ */
+public class LiveStreamReceiver implements Closeable {
+
+    private static final int HISTORY = 8192;
+    private static final int LATENCY_SAMPLES = 1 << 16;
+
+    private final DatagramSocket socket;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    // Ring of recent samples, guarded by this
+    private final long[] elapsedNanos = new long[HISTORY];
+    private final float[][] values = new float[HISTORY][6];
+    private long samplesReceived;
+
+    // Ring of recent latencies in microseconds, guarded by this
+    private final long[] latencyMicros = new long[LATENCY_SAMPLES];
+
+    private long framesReceived;
+    private long lostFrames;
+    private long badFrames;
+    private int senderDropped;
+    private int lastFrameSeq = -1;
+
+    private LiveStreamReceiver(DatagramSocket socket) {
+        this.socket = socket;
+        this.thread = new Thread(this::receiveLoop, "live-receiver");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Listen on the loopback interface; port 0 picks a free one
+     */
+    public static LiveStreamReceiver startLoopback(int port) throws SocketException {
+        return new LiveStreamReceiver(new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), port)));
+    }
+
+    /**
+     * Listen on all interfaces (for a phone on the LAN)
+     */
+    public static LiveStreamReceiver start(int port) throws SocketException {
+        return new LiveStreamReceiver(new DatagramSocket(port));
+    }
+
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    private void receiveLoop() {
+        byte[] data = new byte[LiveStreamSink.HEADER_BYTES
+                + LiveStreamSink.MAX_SAMPLES_PER_FRAME * LiveStreamSink.SAMPLE_BYTES];
+        DatagramPacket packet = new DatagramPacket(data, data.length);
+        while (running) {
+            try {
+                packet.setLength(data.length);
+                socket.receive(packet);
+            } catch (IOException e) {
+                return;
+            }
+            long arrivalMicros = System.currentTimeMillis() * 1000L;
+            decode(ByteBuffer.wrap(data, 0, packet.getLength()), arrivalMicros);
+        }
+    }
+
+    private synchronized void decode(ByteBuffer buffer, long arrivalMicros) {
+        if (buffer.remaining() < LiveStreamSink.HEADER_BYTES
+                || buffer.getInt(0) != LiveStreamSink.MAGIC
+                || buffer.getShort(4) != LiveStreamSink.VERSION) {
+            badFrames++;
+            return;
+        }
+        int count = buffer.getShort(6);
+        int frameSeq = buffer.getInt(8);
+        senderDropped = buffer.getInt(12);
+        long startWallMillis = buffer.getLong(16);
+        if (buffer.remaining() < LiveStreamSink.HEADER_BYTES + count * LiveStreamSink.SAMPLE_BYTES) {
+            badFrames++;
+            return;
+        }
+
+        framesReceived++;
+        if (lastFrameSeq >= 0 && frameSeq > lastFrameSeq + 1) {
+            lostFrames += frameSeq - lastFrameSeq - 1;
+        }
+        lastFrameSeq = frameSeq;
+
+        buffer.position(LiveStreamSink.HEADER_BYTES);
+        for (int s = 0; s < count; s++) {
+            int slot = (int) (samplesReceived % HISTORY);
+            long nanos = buffer.getLong();
+            elapsedNanos[slot] = nanos;
+            for (int i = 0; i < 6; i++) {
+                values[slot][i] = buffer.getFloat();
+            }
+            latencyMicros[(int) (samplesReceived % LATENCY_SAMPLES)] =
+                    arrivalMicros - (startWallMillis * 1000L + nanos / 1000L);
+            samplesReceived++;
+        }
+    }
+
+    public synchronized long getSamplesReceived() {
+        return samplesReceived;
+    }
+
+    public synchronized long getFramesReceived() {
+        return framesReceived;
+    }
+
+    /**
+     * Frames missing from the frameSeq sequence (lost or reordered datagrams)
+     */
+    public synchronized long getLostFrames() {
+        return lostFrames;
+    }
+
+    public synchronized long getBadFrames() {
+        return badFrames;
+    }
+
+    /**
+     * Samples the sender reported dropping from its queue
+     */
+    public synchronized int getSenderDropped() {
+        return senderDropped;
+    }
+
+    /**
+     * Latency percentile (0-100) over the most recent samples, in milliseconds
+     */
+    public synchronized double getLatencyPercentileMillis(double percentile) {
+        int n = (int) Math.min(samplesReceived, LATENCY_SAMPLES);
+        if (n == 0) return Double.NaN;
+        long[] sorted = Arrays.copyOf(latencyMicros, n);
+        Arrays.sort(sorted);
+        int index = (int) Math.min(n - 1, Math.ceil(percentile / 100.0 * n) - 1);
+        return sorted[Math.max(0, index)] / 1000.0;
+    }
+
+    /**
+     * Copy up to out.length most recent samples, oldest first: elapsed times
+     * and one value column (0 magnitude .. 5 calibratedYaw). Returns the count.
+     */
+    public synchronized int copyRecent(long[] nanosOut, float[] valueOut, int column) {
+        int n = (int) Math.min(Math.min(samplesReceived, HISTORY), nanosOut.length);
+        for (int i = 0; i < n; i++) {
+            int slot = (int) ((samplesReceived - n + i) % HISTORY);
+            nanosOut[i] = elapsedNanos[slot];
+            valueOut[i] = values[slot][column];
+        }
+        return n;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        socket.close();
+        try {
+            thread.join(500);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Scrolling plot of the last ten seconds of angular velocity and yaw
+     */
+    private static class PlotPanel extends JPanel {
+        private static final long WINDOW_NANOS = 10_000_000_000L;
+
+        private final LiveStreamReceiver receiver;
+        private final long[] nanos = new long[4096];
+        private final float[] column = new float[4096];
+
+        PlotPanel(LiveStreamReceiver receiver) {
+            this.receiver = receiver;
+            setPreferredSize(new Dimension(900, 420));
+            setBackground(Color.WHITE);
+        }
+
+        @Override
+        protected void paintComponent(Graphics graphics) {
+            super.paintComponent(graphics);
+            Graphics2D g = (Graphics2D) graphics;
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            int half = getHeight() / 2;
+            plot(g, 0, "Magnitude (deg/s)", 0, half, new Color(0x0D47A1), 200f);
+            plot(g, 5, "Calibrated yaw (deg)", half, half, new Color(0xE65100), 180f);
+            g.setColor(Color.DARK_GRAY);
+            g.drawString(String.format(Locale.US, "%d samples, %d lost frames, latency p50 %.1f ms p99 %.1f ms",
+                    receiver.getSamplesReceived(), receiver.getLostFrames(),
+                    receiver.getLatencyPercentileMillis(50), receiver.getLatencyPercentileMillis(99)),
+                    8, getHeight() - 8);
+        }
+
+        private void plot(Graphics2D g, int valueColumn, String label, int top, int height, Color color, float range) {
+            int n = receiver.copyRecent(nanos, column, valueColumn);
+            g.setColor(Color.LIGHT_GRAY);
+            g.drawLine(0, top + height / 2, getWidth(), top + height / 2);
+            g.setColor(Color.BLACK);
+            g.drawString(label, 8, top + 16);
+            if (n < 2) return;
+
+            long end = nanos[n - 1];
+            g.setColor(color);
+            g.setStroke(new BasicStroke(1.5f));
+            int lastX = -1;
+            int lastY = 0;
+            for (int i = 0; i < n; i++) {
+                if (end - nanos[i] > WINDOW_NANOS) continue;
+                int x = (int) (getWidth() - (end - nanos[i]) / (double) WINDOW_NANOS * getWidth());
+                float clamped = Math.max(-range, Math.min(range, column[i]));
+                int y = (int) (top + height / 2 - clamped / range * (height / 2 - 4));
+                if (lastX >= 0) g.drawLine(lastX, lastY, x, y);
+                lastX = x;
+                lastY = y;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : LiveStreamSink.DEFAULT_PORT;
+        LiveStreamReceiver receiver = start(port);
+        System.out.println("Listening for live samples on UDP port " + receiver.getPort());
+
+        if (!GraphicsEnvironment.isHeadless()) {
+            SwingUtilities.invokeLater(() -> {
+                JFrame frame = new JFrame("ZuzApp live stream");
+                PlotPanel panel = new PlotPanel(receiver);
+                frame.add(panel);
+                frame.pack();
+                frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+                frame.setVisible(true);
+                new Timer(33, e -> panel.repaint()).start();
+            });
+        }
+
+        while (true) {
+            Thread.sleep(1000);
+            System.out.printf(Locale.US, "samples=%d frames=%d lost=%d senderDropped=%d p50=%.1fms p99=%.1fms%n",
+                    receiver.getSamplesReceived(), receiver.getFramesReceived(), receiver.getLostFrames(),
+                    receiver.getSenderDropped(), receiver.getLatencyPercentileMillis(50),
+                    receiver.getLatencyPercentileMillis(99));
+        }
+    }
+}
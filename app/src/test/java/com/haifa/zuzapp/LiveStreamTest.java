@@ -0,0 +1,208 @@
+package com.haifa.zuzapp;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.*;
+
+public class LiveStreamTest {
+
+    private FakeSupabaseServer server;
+    private LiveStreamReceiver receiver;
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        server = FakeSupabaseServer.start();
+        receiver = LiveStreamReceiver.startLoopback(0);
+        directory = Files.createTempDirectory("zuzapp-live").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        receiver.close();
+        server.close();
+        for (File f : directory.listFiles()) f.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void samplesArriveInOrderWithTheirValues() throws Exception {
+        int samples = 600;
+        MovementLogger logger = new MovementLogger(server.newClient());
+        LiveStreamSink sink = new LiveStreamSink("127.0.0.1", receiver.getPort(), 1);
+        sink.start();
+        logger.setLiveStream(sink);
+
+        long[] sentNanos = new long[samples];
+        float[] sentMagnitude = new float[samples];
+        logger.startSession(directory, "EXP", "order", new SessionClock(0, System.currentTimeMillis()));
+        SampleSource source = SampleSource.synthetic(200, 3);
+        SampleSource.Sample sample = new SampleSource.Sample();
+        for (int i = 0; i < samples && source.next(sample); i++) {
+            sentNanos[i] = sample.eventNanos;
+            sentMagnitude[i] = sample.magnitude;
+            sample.logTo(logger, "order", "EXP");
+            if (i % 40 == 0) Thread.sleep(1);
+        }
+        logger.stopSession();
+
+        awaitSamples(samples);
+        assertEquals(samples, receiver.getSamplesReceived());
+        assertEquals(0, receiver.getLostFrames());
+        assertEquals(0, receiver.getBadFrames());
+        long[] nanos = new long[samples];
+        float[] magnitude = new float[samples];
+        assertEquals(samples, receiver.copyRecent(nanos, magnitude, 0));
+        assertArrayEquals(sentNanos, nanos);
+        assertArrayEquals(sentMagnitude, magnitude, 0f);
+        assertEquals(samples + 1, Files.readAllLines(new File(logger.getFilePath()).toPath()).size());
+
+        sink.close();
+        logger.cleanup();
+    }
+
+    /**
+     * Wall-clock latency at full rate in real time; opt-in (-Dzuzapp.live=true)
+     * because a loaded CI machine can miss the bound without anything being wrong
+     */
+    @Test
+    public void fullRateSamplesArriveWithinFiftyMillis() throws Exception {
+        Assume.assumeTrue("set -Dzuzapp.live=true to run", Boolean.getBoolean("zuzapp.live"));
+        int samples = 200 * 3;
+        MovementLogger logger = new MovementLogger(server.newClient());
+        LiveStreamSink sink = new LiveStreamSink("127.0.0.1", receiver.getPort(), 1);
+        sink.start();
+        logger.setLiveStream(sink);
+
+        // Real-time 200 Hz with sensor timestamps on the nanoTime clock
+        long t0 = System.nanoTime();
+        logger.startSession(directory, "EXP", "live", new SessionClock(t0, System.currentTimeMillis()));
+        SampleSource source = SampleSource.synthetic(200, 3);
+        SampleSource.Sample sample = new SampleSource.Sample();
+        for (int i = 0; i < samples && source.next(sample); i++) {
+            long due = t0 + i * 5_000_000L;
+            while (System.nanoTime() < due) {
+                LockSupport.parkNanos(due - System.nanoTime());
+            }
+            sample.eventNanos = System.nanoTime();
+            sample.logTo(logger, "live", "EXP");
+        }
+        logger.stopSession();
+
+        awaitSamples(samples);
+        assertEquals(samples, receiver.getSamplesReceived());
+        assertEquals(0, receiver.getLostFrames());
+        assertEquals(0, receiver.getBadFrames());
+        assertTrue("p99 latency " + receiver.getLatencyPercentileMillis(99),
+                receiver.getLatencyPercentileMillis(99) < 50.0);
+        assertEquals(samples + 1, Files.readAllLines(new File(logger.getFilePath()).toPath()).size());
+
+        sink.close();
+        logger.cleanup();
+    }
+
+    @Test
+    public void decimationSendsEveryNthSample() throws Exception {
+        LiveStreamSink sink = LiveStreamSink.forTarget("127.0.0.1:" + receiver.getPort() + "/4");
+        sink.start();
+        sink.beginSession(System.currentTimeMillis());
+        for (int i = 0; i < 400; i++) {
+            sink.publish(i * 5_000_000L, i, 0f, 0f, 0f, 0f, i * 0.5f);
+            if (i % 40 == 0) Thread.sleep(1);
+        }
+
+        awaitSamples(100);
+        long[] nanos = new long[100];
+        float[] magnitude = new float[100];
+        assertEquals(100, receiver.copyRecent(nanos, magnitude, 0));
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i * 4 * 5_000_000L, nanos[i]);
+            assertEquals(i * 4f, magnitude[i], 0f);
+        }
+        sink.close();
+    }
+
+    @Test
+    public void recordingIsUnaffectedWithoutAListener() throws Exception {
+        int samples = 200 * 60;
+        int port = receiver.getPort();
+        receiver.close();
+
+        MovementLogger logger = new MovementLogger(server.newClient());
+        LiveStreamSink sink = new LiveStreamSink("127.0.0.1", port, 1);
+        sink.start();
+        logger.setLiveStream(sink);
+
+        logger.startSession(directory, "EXP", "nobody", new SessionClock(0, System.currentTimeMillis()));
+        SampleSource source = SampleSource.synthetic(200, 5);
+        SampleSource.Sample sample = new SampleSource.Sample();
+        for (int i = 0; i < samples && source.next(sample); i++) {
+            sample.logTo(logger, "nobody", "EXP");
+        }
+        logger.stopSession();
+
+        assertEquals(samples + 1, Files.readAllLines(new File(logger.getFilePath()).toPath()).size());
+        sink.close();
+        logger.cleanup();
+    }
+
+    @Test
+    public void targetsAreParsedAndBadPortsRejected() {
+        LiveStreamSink sink = LiveStreamSink.forTarget("192.168.1.20:5000");
+        assertEquals("192.168.1.20", sink.getHost());
+        assertEquals(5000, sink.getPort());
+
+        sink = LiveStreamSink.forTarget("laptop.local");
+        assertEquals("laptop.local", sink.getHost());
+        assertEquals(LiveStreamSink.DEFAULT_PORT, sink.getPort());
+
+        sink = LiveStreamSink.forTarget("[fe80::1]:6000");
+        assertEquals("fe80::1", sink.getHost());
+        assertEquals(6000, sink.getPort());
+
+        sink = LiveStreamSink.forTarget("[::1]");
+        assertEquals("::1", sink.getHost());
+        assertEquals(LiveStreamSink.DEFAULT_PORT, sink.getPort());
+        assertEquals(1, sink.getDecimation());
+
+        sink = LiveStreamSink.forTarget("192.168.1.20:5000/4");
+        assertEquals("192.168.1.20", sink.getHost());
+        assertEquals(5000, sink.getPort());
+        assertEquals(4, sink.getDecimation());
+
+        sink = LiveStreamSink.forTarget("laptop.local/2");
+        assertEquals("laptop.local", sink.getHost());
+        assertEquals(LiveStreamSink.DEFAULT_PORT, sink.getPort());
+        assertEquals(2, sink.getDecimation());
+
+        sink = LiveStreamSink.forTarget("[fe80::1]:6000/10");
+        assertEquals("fe80::1", sink.getHost());
+        assertEquals(10, sink.getDecimation());
+
+        String[] bad = {"host:70000", "host:0", "host:abc", ":5000", "fe80::1", "[::1", "[::1]5000",
+                "host/0", "host:5000/", "host/x", "host/-2", "/4"};
+        for (String target : bad) {
+            try {
+                LiveStreamSink.forTarget(target);
+                fail("Accepted " + target);
+            } catch (IllegalArgumentException expected) {
+                // reported to the user before recording starts
+            }
+        }
+    }
+
+    private void awaitSamples(long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (receiver.getSamplesReceived() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+    }
+}
@@ -0,0 +1,138 @@
+package com.haifa.zuzapp;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MovementLoggerTest {
+
+    private static final int SAMPLES = 200 * 60; // one minute at 200 Hz
+
+    private FakeSupabaseServer server;
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        server = FakeSupabaseServer.start();
+        directory = Files.createTempDirectory("zuzapp-logger").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+        for (File f : directory.listFiles()) f.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void fullModeUploadsEverySample() throws Exception {
+        MovementLogger logger = new MovementLogger(server.newClient());
+        record(logger, "full");
+
+        awaitRows(SAMPLES);
+        assertEquals(SAMPLES, server.getMovementRowCount());
+        assertTrue(server.hasMovementRow("full", "EXP", SAMPLES));
+        assertEquals(SAMPLES + 1, Files.readAllLines(new File(logger.getFilePath()).toPath()).size());
+        logger.cleanup();
+    }
+
+    @Test
+    public void boutsOnlyModeUploadsBoutSummaries() throws Exception {
+        MovementLogger logger = new MovementLogger(server.newClient());
+        logger.setUploadMode(MovementLogger.UploadMode.BOUTS_ONLY);
+        record(logger, "bouts");
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (server.getMovementBouts().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(300);
+
+        List<JSONObject> bouts = server.getMovementBouts();
+        assertTrue(bouts.size() >= 5);
+        assertEquals(0, server.getMovementRowCount());
+        for (int i = 0; i < bouts.size(); i++) {
+            JSONObject bout = bouts.get(i);
+            assertEquals(i + 1, bout.getLong("bout_index"));
+            assertTrue(bout.getDouble("absolute_rotation") >= Math.abs(bout.getDouble("net_rotation")) - 1e-3);
+            assertTrue(bout.getLong("end_elapsed_ms") >= bout.getLong("start_elapsed_ms"));
+        }
+        // Full-rate data still goes to the local file
+        assertEquals(SAMPLES + 1, Files.readAllLines(new File(logger.getFilePath()).toPath()).size());
+        // Full mode sends ~250 bytes per sample
+        assertTrue(server.getBytesReceived() < SAMPLES * 2L);
+        logger.cleanup();
+    }
+
+    @Test
+    public void reusedSessionIdKeepsBothRecordings() throws Exception {
+        MovementLogger logger = new MovementLogger(server.newClient());
+        record(logger, "again");
+        awaitRows(SAMPLES);
+        // CSV names carry the start time to the second
+        Thread.sleep(1100);
+        record(logger, "again");
+
+        // Same session_id, experimenter_code and seq range, but a new recording
+        awaitRows(2 * SAMPLES);
+        assertEquals(2 * SAMPLES, server.getMovementRowCount());
+        assertEquals(0, server.getDuplicateRowsReceived());
+        awaitSessions(2);
+        assertEquals(2, server.getSessionCount());
+        logger.cleanup();
+    }
+
+    @Test
+    public void fixedPointMatchesStringFormat() {
+        float[] edges = {0f, -0f, 1f, -1f, 0.00005f, -0.00005f, 0.99995f, 359.99995f,
+                -0.00001f, 1e-8f, 123456.78f, 3e12f, Float.MAX_VALUE,
+                Float.NaN, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY};
+        for (float value : edges) {
+            assertFixed4(value);
+        }
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++) {
+            assertFixed4((float) ((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(8))));
+            assertFixed4(Math.round(random.nextGaussian() * 1e6) / 1e4f + 0.00005f);
+        }
+    }
+
+    private static void assertFixed4(float value) {
+        StringBuilder sb = new StringBuilder();
+        MovementLogger.appendFixed4(sb, value);
+        assertEquals(String.format(Locale.US, "%.4f", value), sb.toString());
+    }
+
+    private void record(MovementLogger logger, String sessionId) throws Exception {
+        logger.startSession(directory, "EXP", sessionId, new SessionClock(0, System.currentTimeMillis()));
+        SampleSource source = SampleSource.synthetic(200, 7);
+        SampleSource.Sample sample = new SampleSource.Sample();
+        for (int i = 0; i < SAMPLES && source.next(sample); i++) {
+            sample.logTo(logger, sessionId, "EXP");
+        }
+        logger.stopSession();
+    }
+
+    private void awaitSessions(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (server.getSessionCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+    private void awaitRows(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (server.getMovementRowCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.haifa.zuzapp;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stream of processed samples for driving MovementLogger without sensors:
+ * either synthetic swivel bouts or a replayed session CSV.
+ */
+public abstract class SampleSource {
+
+    /**
+     * One processed sample, as passed to MovementLogger.logMovement
+     */
+    public static class Sample {
+        public long eventNanos;
+        public float magnitude;
+        public float rawDelta;
+        public float angleInDegrees;
+        public float cumulativeAngle;
+        public float relativeAngle;
+        public float pitch;
+        public float roll;
+        public float calibratedYaw;
+        public float rawYaw;
+
+        public void logTo(MovementLogger logger, String sessionId, String experimenterCode) {
+            logger.logMovement(eventNanos, sessionId, experimenterCode, magnitude, rawDelta, angleInDegrees,
+                    cumulativeAngle, relativeAngle, pitch, roll, calibratedYaw, rawYaw);
+        }
+    }
+
+    /**
+     * Fill the next sample; false when the source is exhausted
+     */
+    public abstract boolean next(Sample sample) throws IOException;
+
+    public void close() throws IOException {
+    }
+
+    /**
+     * Endless synthetic session at the given rate: the subject swivels for a
+     * second or two, rests, and swivels back, with a little sensor noise
+     */
+    public static SampleSource synthetic(double rateHz, long seed) {
+        return new Synthetic(rateHz, seed);
+    }
+
+    /**
+     * Replay a session CSV written by MovementLogger (sample times from
+     * ElapsedTimeNs, falling back to ElapsedTimeMs for older files)
+     */
+    public static SampleSource replay(File csv) throws IOException {
+        return new Replay(csv);
+    }
+
+    private static class Synthetic extends SampleSource {
+        private final long periodNanos;
+        private final java.util.Random random;
+        private long index;
+        private float cumulative;
+        private float relative;
+        private float yaw;
+
+        // Current bout: velocity profile runs for boutSamples, then rest for restSamples
+        private long phaseRemaining;
+        private boolean moving;
+        private float peakVelocity;
+        private long phaseLength;
+
+        Synthetic(double rateHz, long seed) {
+            this.periodNanos = (long) (1_000_000_000L / rateHz);
+            this.random = new java.util.Random(seed);
+        }
+
+        @Override
+        public boolean next(Sample s) {
+            if (phaseRemaining <= 0) {
+                moving = !moving;
+                double seconds = moving ? 0.5 + random.nextDouble() * 1.5 : 1 + random.nextDouble() * 4;
+                phaseLength = Math.max(1, (long) (seconds * 1_000_000_000L / periodNanos));
+                phaseRemaining = phaseLength;
+                peakVelocity = (float) ((30 + random.nextDouble() * 90) * (random.nextBoolean() ? 1 : -1));
+            }
+            phaseRemaining--;
+
+            float noise = (float) (random.nextGaussian() * 0.2);
+            float velocity = 0;
+            if (moving) {
+                double phase = (phaseLength - phaseRemaining) / (double) phaseLength;
+                velocity = (float) (peakVelocity * Math.sin(Math.PI * phase));
+            }
+            float seconds = periodNanos / 1_000_000_000.0f;
+            float delta = Math.abs(velocity) < 0.5f ? 0 : velocity;
+            float angle = delta * seconds;
+
+            cumulative += angle;
+            relative = angle == 0 ? 0 : relative + angle;
+            yaw = wrap(yaw + angle);
+
+            s.eventNanos = index * periodNanos;
+            s.magnitude = delta;
+            s.rawDelta = velocity + noise;
+            s.angleInDegrees = angle;
+            s.cumulativeAngle = cumulative;
+            s.relativeAngle = relative;
+            s.pitch = (float) (2 + random.nextGaussian() * 0.1);
+            s.roll = (float) (-1 + random.nextGaussian() * 0.1);
+            s.calibratedYaw = yaw;
+            s.rawYaw = yaw;
+            index++;
+            return true;
+        }
+
+        private static float wrap(float degrees) {
+            if (degrees > 180) return degrees - 360;
+            if (degrees < -180) return degrees + 360;
+            return degrees;
+        }
+    }
+
+    private static class Replay extends SampleSource {
+        private final BufferedReader reader;
+        private final int elapsedNs;
+        private final int elapsedMs;
+        private final int[] floatColumns;
+
+        Replay(File csv) throws IOException {
+            reader = new BufferedReader(new FileReader(csv));
+            String header = reader.readLine();
+            if (header == null) {
+                throw new IOException("Empty session file: " + csv);
+            }
+            List<String> columns = Arrays.asList(header.trim().split(","));
+            elapsedNs = columns.indexOf("ElapsedTimeNs");
+            elapsedMs = columns.indexOf("ElapsedTimeMs");
+            String[] names = {"Magnitude", "RawDelta", "AngleInDegrees", "CumulativeAngle", "RelativeAngle",
+                    "Pitch", "Roll", "CalibratedYaw", "RawYaw"};
+            floatColumns = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                floatColumns[i] = columns.indexOf(names[i]);
+            }
+        }
+
+        @Override
+        public boolean next(Sample s) throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+                if (line == null) return false;
+            } while (line.isEmpty());
+
+            String[] f = line.split(",");
+            s.eventNanos = elapsedNs >= 0 && elapsedNs < f.length
+                    ? Long.parseLong(f[elapsedNs])
+                    : Long.parseLong(f[elapsedMs]) * 1_000_000L;
+            s.magnitude = column(f, 0);
+            s.rawDelta = column(f, 1);
+            s.angleInDegrees = column(f, 2);
+            s.cumulativeAngle = column(f, 3);
+            s.relativeAngle = column(f, 4);
+            s.pitch = column(f, 5);
+            s.roll = column(f, 6);
+            s.calibratedYaw = column(f, 7);
+            s.rawYaw = column(f, 8);
+            return true;
+        }
+
+        private float column(String[] fields, int i) {
+            int index = floatColumns[i];
+            return index >= 0 && index < fields.length ? Float.parseFloat(fields[index]) : 0f;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.haifa.zuzapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SensorEventBusTest {
+
+    private static final int TYPE_GYROSCOPE = 4;
+
+    /**
+     * Records timestamps, slowly enough that samples pile up in its queue
+     */
+    private static class SlowProcessor implements SensorProcessor {
+        final List<Long> timestamps = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public int getSensorType() {
+            return TYPE_GYROSCOPE;
+        }
+
+        @Override
+        public void process(SensorSample sample) {
+            timestamps.add(sample.timestamp);
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Test
+    public void drainDeliversEverySampleQueuedBeforeStop() {
+        SensorEventBus bus = new SensorEventBus();
+        SlowProcessor processor = new SlowProcessor();
+        bus.register(processor);
+        bus.start();
+
+        int count = 500;
+        for (int i = 1; i <= count; i++) {
+            bus.dispatch(TYPE_GYROSCOPE, i, new float[]{0f, 0f, 0.1f});
+        }
+        assertTrue(bus.drain(10_000));
+        bus.stop();
+
+        assertEquals(0, bus.getDroppedCount());
+        assertEquals(count, processor.timestamps.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i + 1, (long) processor.timestamps.get(i));
+        }
+    }
+
+    @Test
+    public void drainTimesOutInsteadOfHanging() {
+        SensorEventBus bus = new SensorEventBus();
+        SlowProcessor processor = new SlowProcessor();
+        bus.register(processor);
+        bus.start();
+
+        for (int i = 1; i <= 500; i++) {
+            bus.dispatch(TYPE_GYROSCOPE, i, new float[]{0f, 0f, 0.1f});
+        }
+        assertFalse(bus.drain(5));
+        bus.stop();
+    }
+}
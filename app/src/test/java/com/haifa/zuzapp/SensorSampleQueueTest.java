@@ -0,0 +1,68 @@
+package com.haifa.zuzapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SensorSampleQueueTest {
+
+    @Test
+    public void deliversInOrderAndDropsWhenFull() {
+        SensorSampleQueue queue = new SensorSampleQueue(4);
+        assertEquals(4, queue.getCapacity());
+        for (int i = 0; i < 6; i++) {
+            queue.offer(i, new float[]{i, -i, 2 * i});
+        }
+        assertEquals(2, queue.getDroppedCount());
+
+        SensorSample sample = new SensorSample();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.poll(sample));
+            assertEquals(i, sample.timestamp);
+            assertEquals(3, sample.valueCount);
+            assertEquals(2 * i, sample.values[2], 0f);
+        }
+        assertFalse(queue.poll(sample));
+    }
+
+    @Test
+    public void truncatesLongEvents() {
+        SensorSampleQueue queue = new SensorSampleQueue(2);
+        queue.offer(1, new float[16]);
+        SensorSample sample = new SensorSample();
+        assertTrue(queue.poll(sample));
+        assertEquals(SensorSampleQueue.MAX_VALUES, sample.valueCount);
+    }
+
+    @Test
+    public void consumerThreadSeesEverySampleInOrder() throws Exception {
+        final int count = 200_000;
+        SensorSampleQueue queue = new SensorSampleQueue(1024);
+        long[] failures = new long[1];
+
+        Thread consumer = new Thread(() -> {
+            SensorSample sample = new SensorSample();
+            long expected = 0;
+            while (expected < count) {
+                if (queue.take(sample, 10_000_000L)) {
+                    if (sample.timestamp != expected || sample.values[0] != (float) expected) failures[0]++;
+                    expected++;
+                }
+            }
+        });
+        consumer.start();
+
+        float[] values = new float[3];
+        for (int i = 0; i < count; ) {
+            values[0] = i;
+            if (queue.offer(i, values)) {
+                i++;
+            } else {
+                Thread.yield();
+            }
+        }
+        consumer.join(10_000);
+        assertFalse(consumer.isAlive());
+        assertEquals(0, failures[0]);
+    }
+}
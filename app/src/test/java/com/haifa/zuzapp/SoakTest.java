@@ -0,0 +1,431 @@
+package com.haifa.zuzapp;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadInfo;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.*;
+
+/**
+ * Long-run soak: drives one session at 200 Hz (synthetic or a replayed CSV,
+ * looped) through MovementLogger and SupabaseClient into a FakeSupabaseServer
+ * for simulated hours, time-compressed by a speedup factor. Every window it
+ * records allocation per sample, heap high-water mark, heap retained after
+ * a full GC, GC pauses, open file descriptors, upload backlog and
+ * throughput, then fails if any of them trend the wrong way beyond budget.
+ *
+ * It takes tens of seconds of wall time and its budgets depend on a quiet
+ * machine, so it only runs when asked. 20 simulated minutes:
+ * ./gradlew testDebugUnitTest --tests '*SoakTest*' -Dzuzapp.soak=true
+ * An 8-hour session:
+ * ./gradlew testDebugUnitTest --tests '*SoakTest*' -Dzuzapp.soak.minutes=480 -Dzuzapp.soak.speedup=120
+ * plus any of the zuzapp.soak.* options read by {@link Options#fromSystemProperties()}.
+ *
+ * Allocation is counted on every thread except the FakeSupabaseServer's. At
+ * about 14 KB per sample in FULL mode it is dominated by text: roughly 5 KB
+ * formatting the CSV row and updating the summaries, 1 KB building the JSON
+ * record, and 8 KB on the upload threads serialising and encoding batches.
+ * All of it is short-lived; the budget catches a regression.
+ * The CSV of an 8-hour session is close to 1 GB; it is written to a temp
+ * directory and deleted afterwards.
+ */
+public class SoakTest {
+
+    public static class Options {
+        double minutes = 20;
+        double rateHz = 200;
+        // Simulated seconds per wall second (0 = as fast as possible)
+        double speedup = 60;
+        double windowMinutes = 2;
+        // Windows ignored by the trend check (JIT, pools and caches filling)
+        int warmupWindows = 2;
+        long latencyMinMs = 2;
+        long latencyMaxMs = 20;
+        double errorRate = 0.01;
+        File replay;
+
+        // Budgets: how far a metric may move over the measured windows
+        long retainedHeapGrowthBytes = 16L << 20;
+        double maxAllocatedBytesPerSample = 20_000;
+        double heapPeakGrowthFraction = 0.5;
+        double allocationGrowthFraction = 0.2;
+        long gcPauseGrowthMillis = 50;
+        long fdGrowth = 4;
+        long pendingGrowthRecords = 2 * UploadController.MAX_BATCH_SIZE;
+        double throughputDropFraction = 0.2;
+
+        public static Options fromSystemProperties() {
+            Options o = new Options();
+            o.minutes = Double.parseDouble(System.getProperty("zuzapp.soak.minutes", "60"));
+            o.rateHz = Double.parseDouble(System.getProperty("zuzapp.soak.rateHz", "200"));
+            o.speedup = Double.parseDouble(System.getProperty("zuzapp.soak.speedup", "60"));
+            o.windowMinutes = Double.parseDouble(System.getProperty("zuzapp.soak.windowMinutes",
+                    String.valueOf(Math.max(2, o.minutes / 30))));
+            o.warmupWindows = Integer.parseInt(System.getProperty("zuzapp.soak.warmupWindows", "2"));
+            o.latencyMinMs = Long.parseLong(System.getProperty("zuzapp.soak.latencyMinMs", "2"));
+            o.latencyMaxMs = Long.parseLong(System.getProperty("zuzapp.soak.latencyMaxMs", "20"));
+            o.errorRate = Double.parseDouble(System.getProperty("zuzapp.soak.errorRate", "0.01"));
+            o.retainedHeapGrowthBytes = Long.parseLong(System.getProperty("zuzapp.soak.heapBudgetMb", "16")) << 20;
+            o.maxAllocatedBytesPerSample = Double.parseDouble(
+                    System.getProperty("zuzapp.soak.allocBudgetBytes", "20000"));
+            String replay = System.getProperty("zuzapp.soak.replay");
+            o.replay = replay != null ? new File(replay) : null;
+            return o;
+        }
+    }
+
+    /**
+     * Metrics for one window of simulated time
+     */
+    public static class Window {
+        double simulatedMinutes;
+        double samplesPerSec;
+        double recordsAckedPerSec;
+        double allocatedBytesPerSample;
+        long heapPeakBytes;
+        long retainedHeapBytes;
+        long gcCount;
+        long gcPauseMillis;
+        long openFds;
+        long pendingRecords;
+
+        String row() {
+            return String.format(Locale.US, "%8.1f %10.0f %10.0f %10.0f %9.1f %9.1f %5d %6d %5d %8d",
+                    simulatedMinutes, samplesPerSec, recordsAckedPerSec, allocatedBytesPerSample,
+                    heapPeakBytes / 1048576.0, retainedHeapBytes / 1048576.0, gcCount, gcPauseMillis,
+                    openFds, pendingRecords);
+        }
+    }
+
+    public static class Result {
+        final List<Window> windows = new ArrayList<>();
+        final List<String> violations = new ArrayList<>();
+        long samples;
+        long recordsAcked;
+        long droppedRecords;
+
+        String report() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.US, "samples=%d acked=%d dropped=%d%n", samples, recordsAcked, droppedRecords));
+            sb.append("  sim-min  samples/s    acked/s   B/sample  peak MB  kept MB   gcs gc-ms   fds  pending\n");
+            for (Window w : windows) sb.append(w.row()).append('\n');
+            if (violations.isEmpty()) {
+                sb.append("All metrics within budget");
+            } else {
+                for (String v : violations) sb.append("OVER BUDGET: ").append(v).append('\n');
+            }
+            return sb.toString();
+        }
+    }
+
+    @Test
+    public void twentyMinuteSessionHoldsSteady() throws Exception {
+        Assume.assumeTrue("set -Dzuzapp.soak=true to run", Boolean.getBoolean("zuzapp.soak"));
+        try (FakeSupabaseServer server = FakeSupabaseServer.start()) {
+            Result r = run(new Options(), server);
+            System.out.println("Soak: " + r.report());
+            assertTrue(r.violations.toString(), r.violations.isEmpty());
+            assertEquals(0, r.droppedRecords);
+        }
+    }
+
+    @Test
+    public void configuredSoak() throws Exception {
+        Assume.assumeTrue("set -Dzuzapp.soak.minutes to run", System.getProperty("zuzapp.soak.minutes") != null);
+        try (FakeSupabaseServer server = FakeSupabaseServer.start()) {
+            Result r = run(Options.fromSystemProperties(), server);
+            System.out.println("Configured soak: " + r.report());
+            assertTrue(r.violations.toString(), r.violations.isEmpty());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        try (FakeSupabaseServer server = FakeSupabaseServer.start()) {
+            System.out.println(run(Options.fromSystemProperties(), server).report());
+        }
+    }
+
+    public static Result run(Options o, FakeSupabaseServer server) throws Exception {
+        server.setRetainRows(false)
+                .setLatencyMillis(o.latencyMinMs, o.latencyMaxMs)
+                .setErrorRate(o.errorRate, 503);
+
+        File directory = Files.createTempDirectory("zuzapp-soak").toFile();
+        SupabaseClient client = server.newClient();
+        MovementLogger logger = new MovementLogger(client);
+        Probe probe = new Probe();
+        Result r = new Result();
+
+        long periodNanos = (long) (1e9 / o.rateHz);
+        long totalSamples = (long) (o.minutes * 60 * o.rateHz);
+        long windowSamples = Math.max(1, (long) (o.windowMinutes * 60 * o.rateHz));
+
+        LoopingSource source = new LoopingSource(o);
+        SampleSource.Sample sample = new SampleSource.Sample();
+        try {
+            logger.startSession(directory, "SOAK", "soak", new SessionClock(0, System.currentTimeMillis()));
+            probe.begin(client);
+            long start = System.nanoTime();
+            for (long i = 0; i < totalSamples; i++) {
+                source.next(sample);
+                if (o.speedup > 0) {
+                    long due = start + (long) (i * periodNanos / o.speedup);
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) LockSupport.parkNanos(wait);
+                }
+                sample.logTo(logger, "soak", "SOAK");
+
+                if ((i + 1) % windowSamples == 0) {
+                    Window w = probe.endWindow(client, windowSamples);
+                    w.simulatedMinutes = (i + 1) / o.rateHz / 60;
+                    r.windows.add(w);
+                }
+            }
+            logger.stopSession();
+
+            long drainDeadline = System.nanoTime() + 60_000_000_000L;
+            while (client.getTotalRecordsAcked() < totalSamples && System.nanoTime() < drainDeadline) {
+                Thread.sleep(50);
+            }
+        } finally {
+            source.close();
+            logger.cleanup();
+            for (File f : directory.listFiles()) f.delete();
+            directory.delete();
+        }
+
+        r.samples = totalSamples;
+        r.recordsAcked = client.getTotalRecordsAcked();
+        r.droppedRecords = client.getDroppedRecordCount();
+        checkTrends(o, r);
+        return r;
+    }
+
+    /**
+     * Fit a line through each metric over the post-warmup windows and compare
+     * its rise across the run with the budget
+     */
+    static void checkTrends(Options o, Result r) {
+        List<Window> w = r.windows.subList(Math.min(o.warmupWindows, r.windows.size()), r.windows.size());
+        if (w.size() < 3) {
+            r.violations.add("only " + w.size() + " windows after warmup; run longer or shorten windowMinutes");
+            return;
+        }
+        int n = w.size();
+        double[] retained = new double[n];
+        double[] peak = new double[n];
+        double[] alloc = new double[n];
+        double[] gcPause = new double[n];
+        double[] fds = new double[n];
+        double[] pending = new double[n];
+        double[] samplesPerSec = new double[n];
+        double[] ackedPerSec = new double[n];
+        for (int i = 0; i < n; i++) {
+            retained[i] = w.get(i).retainedHeapBytes;
+            peak[i] = w.get(i).heapPeakBytes;
+            alloc[i] = w.get(i).allocatedBytesPerSample;
+            gcPause[i] = w.get(i).gcPauseMillis;
+            fds[i] = w.get(i).openFds;
+            pending[i] = w.get(i).pendingRecords;
+            samplesPerSec[i] = w.get(i).samplesPerSec;
+            ackedPerSec[i] = w.get(i).recordsAckedPerSec;
+        }
+
+        limitRise(r, "retained heap (bytes)", retained, o.retainedHeapGrowthBytes);
+        limitRise(r, "heap high-water (bytes)", peak, o.heapPeakGrowthFraction * mean(peak));
+        limitRise(r, "allocation (bytes/sample)", alloc, o.allocationGrowthFraction * mean(alloc));
+        if (mean(alloc) > o.maxAllocatedBytesPerSample) {
+            r.violations.add(String.format(Locale.US, "allocation averaged %.0f bytes/sample (budget %.0f)",
+                    mean(alloc), o.maxAllocatedBytesPerSample));
+        }
+        limitRise(r, "GC pause (ms/window)", gcPause, Math.max(o.gcPauseGrowthMillis, 0.5 * mean(gcPause)));
+        if (fds[0] >= 0) {
+            limitRise(r, "open file descriptors", fds, o.fdGrowth);
+        }
+        limitRise(r, "upload backlog (records)", pending, o.pendingGrowthRecords);
+        limitRise(r, "logging throughput drop (samples/s)", negate(samplesPerSec),
+                o.throughputDropFraction * mean(samplesPerSec));
+        limitRise(r, "upload throughput drop (records/s)", negate(ackedPerSec),
+                o.throughputDropFraction * mean(ackedPerSec));
+    }
+
+    private static void limitRise(Result r, String metric, double[] values, double budget) {
+        double rise = slope(values) * (values.length - 1);
+        if (rise > budget) {
+            r.violations.add(String.format(Locale.US, "%s rose by %.1f over the run (budget %.1f)", metric, rise, budget));
+        }
+    }
+
+    // Least-squares slope per window
+    static double slope(double[] y) {
+        int n = y.length;
+        double meanX = (n - 1) / 2.0;
+        double meanY = mean(y);
+        double num = 0;
+        double den = 0;
+        for (int i = 0; i < n; i++) {
+            num += (i - meanX) * (y[i] - meanY);
+            den += (i - meanX) * (i - meanX);
+        }
+        return den == 0 ? 0 : num / den;
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double v : values) sum += v;
+        return values.length > 0 ? sum / values.length : 0;
+    }
+
+    private static double[] negate(double[] values) {
+        double[] out = new double[values.length];
+        for (int i = 0; i < values.length; i++) out[i] = -values[i];
+        return out;
+    }
+
+    /**
+     * JVM-wide measurements via the platform MXBeans
+     */
+    private static class Probe {
+        private final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        private final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+        // Per-thread totals, so threads that exit (idle upload workers) do not skew the sum
+        private Map<Long, Long> allocatedByThread = new HashMap<>();
+        private long gcCount;
+        private long gcMillis;
+        private long startNanos;
+        private long ackedAtStart;
+
+        Probe() {
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) heapPools.add(pool);
+            }
+        }
+
+        void begin(SupabaseClient client) {
+            allocatedSince();
+            fullGc();
+            startNanos = System.nanoTime();
+            ackedAtStart = client.getTotalRecordsAcked();
+        }
+
+        Window endWindow(SupabaseClient client, long samples) {
+            Window w = new Window();
+            long now = System.nanoTime();
+            double seconds = (now - startNanos) / 1e9;
+            long acked = client.getTotalRecordsAcked();
+            w.samplesPerSec = samples / seconds;
+            w.recordsAckedPerSec = (acked - ackedAtStart) / seconds;
+            w.allocatedBytesPerSample = allocatedSince() / (double) samples;
+            w.pendingRecords = client.getPendingRecordCount();
+            w.openFds = os instanceof com.sun.management.UnixOperatingSystemMXBean
+                    ? ((com.sun.management.UnixOperatingSystemMXBean) os).getOpenFileDescriptorCount()
+                    : -1;
+
+            for (MemoryPoolMXBean pool : heapPools) {
+                w.heapPeakBytes += pool.getPeakUsage().getUsed();
+            }
+            long count = 0;
+            long millis = 0;
+            for (GarbageCollectorMXBean gc : collectors) {
+                count += Math.max(0, gc.getCollectionCount());
+                millis += Math.max(0, gc.getCollectionTime());
+            }
+            w.gcCount = count - gcCount;
+            w.gcPauseMillis = millis - gcMillis;
+
+            // The forced collection is excluded from the next window's GC numbers
+            w.retainedHeapBytes = fullGc();
+            startNanos = System.nanoTime();
+            ackedAtStart = client.getTotalRecordsAcked();
+            return w;
+        }
+
+        // The stand-in server's parsing would not happen on the phone
+        private static boolean isServerThread(String name) {
+            return name.startsWith(FakeSupabaseServer.THREAD_NAME_PREFIX) || name.startsWith("HTTP-Dispatcher");
+        }
+
+        private long fullGc() {
+            System.gc();
+            long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+            gcCount = 0;
+            gcMillis = 0;
+            for (GarbageCollectorMXBean gc : collectors) {
+                gcCount += Math.max(0, gc.getCollectionCount());
+                gcMillis += Math.max(0, gc.getCollectionTime());
+            }
+            for (MemoryPoolMXBean pool : heapPools) {
+                pool.resetPeakUsage();
+            }
+            return used;
+        }
+
+        private long allocatedSince() {
+            long[] ids = threads.getAllThreadIds();
+            long[] bytes = threads.getThreadAllocatedBytes(ids);
+            ThreadInfo[] infos = threads.getThreadInfo(ids);
+            Map<Long, Long> current = new HashMap<>();
+            long delta = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (bytes[i] < 0 || infos[i] == null || isServerThread(infos[i].getThreadName())) continue;
+                current.put(ids[i], bytes[i]);
+                Long previous = allocatedByThread.get(ids[i]);
+                delta += bytes[i] - (previous != null ? previous : 0);
+            }
+            allocatedByThread = current;
+            return delta;
+        }
+    }
+
+    /**
+     * Endless samples: synthetic, or the replayed CSV started over with
+     * timestamps continuing from where the previous pass ended
+     */
+    private static class LoopingSource {
+        private final Options o;
+        private SampleSource source;
+        private long offsetNanos;
+        private long lastNanos;
+
+        LoopingSource(Options o) throws IOException {
+            this.o = o;
+            this.source = o.replay != null ? SampleSource.replay(o.replay) : SampleSource.synthetic(o.rateHz, 11);
+        }
+
+        void next(SampleSource.Sample sample) throws IOException {
+            if (!source.next(sample)) {
+                source.close();
+                source = SampleSource.replay(o.replay);
+                offsetNanos = lastNanos + (long) (1e9 / o.rateHz);
+                if (!source.next(sample)) {
+                    throw new IOException("Empty replay file " + o.replay);
+                }
+            }
+            sample.eventNanos += offsetNanos;
+            lastNanos = sample.eventNanos;
+        }
+
+        void close() throws IOException {
+            source.close();
+        }
+    }
+}
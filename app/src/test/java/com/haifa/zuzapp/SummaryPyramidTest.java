@@ -0,0 +1,89 @@
+package com.haifa.zuzapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class SummaryPyramidTest {
+
+    private static final long SECOND = 1_000_000_000L;
+    private static final long PERIOD = 5_000_000L; // 200 Hz
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("zuzapp-summary").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File f : directory.listFiles()) f.delete();
+        directory.delete();
+    }
+
+    @Test
+    public void tiersSummariseEveryBucket() throws Exception {
+        // 10 minutes at 200 Hz; velocity ramps within each second
+        try (SummaryPyramid pyramid = new SummaryPyramid(directory, "s", 1_000L)) {
+            for (long t = 0; t < 600 * SECOND; t += PERIOD) {
+                float velocity = (t % SECOND) / (float) SECOND;
+                pyramid.add(t, velocity, t / (float) SECOND, -velocity);
+            }
+        }
+
+        try (SummaryReader reader = new SummaryReader(SummaryPyramid.tierFile(directory, "s", SECOND))) {
+            assertEquals(600, reader.getBucketCount());
+            assertEquals(1_000L, reader.getStartWallMillis());
+
+            SummaryReader.Buckets buckets = new SummaryReader.Buckets();
+            reader.read(42, 3, buckets);
+            assertEquals(3, buckets.size);
+            assertEquals(42, buckets.firstBucket);
+            assertEquals(200, buckets.count[0]);
+            assertEquals(0f, buckets.velocityMin[0], 1e-6f);
+            assertEquals(0.995f, buckets.velocityMax[0], 1e-4f);
+            assertEquals(0.4975f, buckets.velocityMean[0], 1e-3f);
+            assertEquals(42f, buckets.cumulativeMin[0], 1e-4f);
+            assertEquals(-0.995f, buckets.yawMin[0], 1e-4f);
+        }
+
+        try (SummaryReader reader = new SummaryReader(SummaryPyramid.tierFile(directory, "s", 60 * SECOND))) {
+            assertEquals(10, reader.getBucketCount());
+            SummaryReader.Buckets buckets = new SummaryReader.Buckets();
+            reader.read(0, 100, buckets);
+            assertEquals(10, buckets.size);
+            assertEquals(60 * 200, buckets.count[9]);
+            assertEquals(540f, buckets.cumulativeMin[9], 1e-3f);
+        }
+    }
+
+    @Test
+    public void gapsKeepRecordIndexAlignedWithTime() throws Exception {
+        try (SummaryPyramid pyramid = new SummaryPyramid(directory, "g", 0L)) {
+            pyramid.add(500_000_000L, 1f, 0f, 0f);
+            pyramid.add(5 * SECOND + 1, 2f, 0f, 0f);
+        }
+        try (SummaryReader reader = new SummaryReader(SummaryPyramid.tierFile(directory, "g", SECOND))) {
+            SummaryReader.Buckets buckets = new SummaryReader.Buckets();
+            reader.read(0, 10, buckets);
+            assertEquals(6, buckets.size);
+            assertEquals(1, buckets.count[0]);
+            assertEquals(0, buckets.count[3]);
+            assertEquals(1, buckets.count[5]);
+            assertEquals(2f, buckets.velocityMax[5], 0f);
+        }
+    }
+
+    @Test
+    public void chooseTierPicksFinestThatFits() {
+        assertEquals(SECOND, SummaryReader.chooseTier(5 * 60 * SECOND, 1000));
+        assertEquals(10 * SECOND, SummaryReader.chooseTier(60 * 60 * SECOND, 1000));
+        assertEquals(60 * SECOND, SummaryReader.chooseTier(8 * 3600 * SECOND, 1000));
+    }
+}
@@ -0,0 +1,132 @@
+package com.haifa.zuzapp;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SupabaseClientTest {
+
+    private FakeSupabaseServer server;
+    private SupabaseClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = FakeSupabaseServer.start();
+        client = server.newClient();
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void resentBatchIsStoredOnce() throws Exception {
+        client.upsertMovementRecords("s1", "EXP", 1, 3, records("s1", "EXP", 1, 3));
+        client.upsertMovementRecords("s1", "EXP", 1, 3, records("s1", "EXP", 1, 3));
+        awaitAcked("s1", "EXP", 3);
+        Thread.sleep(200);
+
+        assertEquals(3, server.getMovementRowCount());
+        FakeSupabaseServer.Request request = server.getRequests().get(0);
+        assertEquals("on_conflict=session_id,experimenter_code,recording_id,seq", request.query);
+        assertTrue(request.prefer.contains("resolution=ignore-duplicates"));
+    }
+
+    @Test
+    public void retriesUntilServerRecovers() throws Exception {
+        server.setErrorRate(1.0, 503);
+        client.upsertMovementRecords("s2", "EXP", 1, 5, records("s2", "EXP", 1, 5));
+        Thread.sleep(300);
+        assertEquals(0, client.getAckedHighWaterMark("s2", "EXP"));
+
+        server.setErrorRate(0, 503);
+        awaitAcked("s2", "EXP", 5);
+        assertEquals(5, server.getMovementRowCount());
+        assertTrue(server.getInjectedErrors() > 0);
+    }
+
+    @Test
+    public void emptyBodyErrorsAreRetried() throws Exception {
+        server.setErrorBody(null).setErrorRate(1.0, 503);
+        client.upsertMovementRecords("s5", "EXP", 1, 5, records("s5", "EXP", 1, 5));
+        Thread.sleep(300);
+        assertEquals(0, client.getAckedHighWaterMark("s5", "EXP"));
+
+        server.setErrorRate(0, 503);
+        awaitAcked("s5", "EXP", 5);
+        assertEquals(5, server.getMovementRowCount());
+        assertEquals(0, client.getDroppedRecordCount());
+    }
+
+    @Test
+    public void abandonedBatchesAreCountedAsDropped() throws Exception {
+        // 400 is permanent, so each batch is given up after one attempt
+        server.setErrorRate(1.0, 400);
+        client.upsertMovementRecords("s6", "EXP", 1, 5, records("s6", "EXP", 1, 5));
+        client.upsertMovementRecords("s6", "EXP", 6, 8, records("s6", "EXP", 6, 8));
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (client.getDroppedRecordCount() < 8 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(8, client.getDroppedRecordCount());
+        assertEquals(0, client.getAckedHighWaterMark("s6", "EXP"));
+        assertEquals(0, server.getMovementRowCount());
+    }
+
+    @Test
+    public void releasedSessionIsNoLongerTracked() throws Exception {
+        client.upsertMovementRecords("s4", "EXP", 1, 3, records("s4", "EXP", 1, 3));
+        client.upsertMovementBouts("s4", "EXP", 1, 1, new JSONArray().put(new JSONObject()
+                .put("session_id", "s4").put("experimenter_code", "EXP").put("bout_index", 1)));
+        awaitAcked("s4", "EXP", 3);
+        assertEquals(2, client.getTrackedSessionCount());
+
+        client.releaseSession("s4", "EXP");
+        assertEquals(0, client.getTrackedSessionCount());
+        assertEquals(0, client.getAckedHighWaterMark("s4", "EXP"));
+    }
+
+    @Test
+    public void sessionStartAndEndReachServer() throws Exception {
+        client.insertSessionStart("s3", "EXP", "r1", "20260101_120000", 1L, "model", "14", "/tmp/x.csv");
+        Thread.sleep(200);
+        client.updateSessionEnd("s3", "EXP", "r1", "20260101_121000", 2L, 1L);
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        JSONObject session;
+        do {
+            Thread.sleep(20);
+            session = server.getSession("s3", "EXP");
+        } while ((session == null || !"completed".equals(session.optString("status")))
+                && System.currentTimeMillis() < deadline);
+        assertNotNull(session);
+        assertEquals("completed", session.getString("status"));
+    }
+
+    private void awaitAcked(String sessionId, String code, long seq) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (client.getAckedHighWaterMark(sessionId, code) < seq && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(seq, client.getAckedHighWaterMark(sessionId, code));
+    }
+
+    private static JSONArray records(String sessionId, String code, long first, long last) {
+        JSONArray array = new JSONArray();
+        for (long seq = first; seq <= last; seq++) {
+            array.put(new JSONObject()
+                    .put("session_id", sessionId)
+                    .put("experimenter_code", code)
+                    .put("seq", seq)
+                    .put("magnitude", 1.5));
+        }
+        return array;
+    }
+}
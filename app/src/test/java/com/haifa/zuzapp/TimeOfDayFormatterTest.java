@@ -0,0 +1,70 @@
+package com.haifa.zuzapp;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class TimeOfDayFormatterTest {
+
+    @Test
+    public void matchesSimpleDateFormat() {
+        TimeZone zone = TimeZone.getTimeZone("Asia/Jerusalem");
+        TimeOfDayFormatter formatter = new TimeOfDayFormatter(zone);
+        SimpleDateFormat reference = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+        reference.setTimeZone(zone);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long millis = (long) (random.nextDouble() * 4_000_000_000_000L);
+            assertEquals(reference.format(new Date(millis)), formatter.format(millis));
+        }
+    }
+
+    @Test
+    public void followsTransitionsOffTheHour() {
+        // Lord Howe Island moves between +10:30 and +11:00 at 02:00 local,
+        // i.e. at 15:00 or 15:30 UTC
+        sweep("Australia/Lord_Howe", "2024-04-06T12:00:00Z", "2024-04-06T18:00:00Z");
+        sweep("Australia/Lord_Howe", "2024-10-05T12:00:00Z", "2024-10-05T18:00:00Z");
+        sweep("Asia/Jerusalem", "2024-10-26T20:00:00Z", "2024-10-27T02:00:00Z");
+    }
+
+    /**
+     * Format consecutive times, one formatter throughout so the cached offset
+     * is carried across the transition
+     */
+    private static void sweep(String zoneId, String from, String to) {
+        TimeZone zone = TimeZone.getTimeZone(zoneId);
+        TimeOfDayFormatter formatter = new TimeOfDayFormatter(zone);
+        SimpleDateFormat reference = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+        reference.setTimeZone(zone);
+
+        long end = Instant.parse(to).toEpochMilli();
+        for (long millis = Instant.parse(from).toEpochMilli(); millis < end; millis += 7_001) {
+            assertEquals(zoneId + " at " + millis, reference.format(new Date(millis)), formatter.format(millis));
+        }
+    }
+
+    @Test
+    public void formatToAppends() {
+        TimeOfDayFormatter formatter = new TimeOfDayFormatter(TimeZone.getTimeZone("UTC"));
+        StringBuilder sb = new StringBuilder("t=");
+        formatter.formatTo(3_723_004L, sb);
+        assertEquals("t=01:02:03.004", sb.toString());
+    }
+
+    @Test
+    public void sessionClockMapsEventTime() {
+        SessionClock clock = new SessionClock(5_000_000_000L, 1_700_000_000_000L);
+        assertEquals(1_500_000L, clock.elapsedNanos(5_001_500_000L));
+        assertEquals(1_700_000_000_001L, clock.wallMillis(5_001_500_000L));
+        assertEquals(1_699_999_999_999L, clock.wallMillis(4_999_999_999L));
+    }
+}
@@ -0,0 +1,81 @@
+package com.haifa.zuzapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UploadControllerTest {
+
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void windowGrowsWhileHealthy() {
+        UploadController controller = new UploadController();
+        long now = 0;
+        for (int i = 0; i < 200; i++) {
+            assertTrue(controller.tryAcquire());
+            now += 50 * MS;
+            controller.onSuccess(20, 50 * MS, true, now);
+        }
+        assertEquals(UploadController.MAX_WINDOW, controller.getWindow());
+        assertEquals(UploadController.MAX_BATCH_SIZE, controller.getBatchSize());
+        assertTrue(controller.getThroughputRecordsPerSec() > 0);
+    }
+
+    @Test
+    public void windowHalvesOnCongestionOncePerRoundTrip() {
+        UploadController controller = grownController();
+        int before = controller.getWindow();
+
+        long now = 100_000 * MS;
+        controller.tryAcquire();
+        controller.tryAcquire();
+        controller.onCongestion(now);
+        controller.onCongestion(now + MS);
+        assertEquals(before / 2, controller.getWindow());
+
+        controller.tryAcquire();
+        controller.onCongestion(now + 1_000 * MS);
+        assertEquals(before / 4, controller.getWindow());
+    }
+
+    @Test
+    public void windowBoundsInFlightRequests() {
+        UploadController controller = new UploadController();
+        for (int i = 0; i < UploadController.INITIAL_WINDOW; i++) {
+            assertTrue(controller.tryAcquire());
+        }
+        assertFalse(controller.tryAcquire());
+        controller.onError(0);
+        assertTrue(controller.tryAcquire());
+    }
+
+    @Test
+    public void doesNotGrowWhenLatencyRises() {
+        UploadController controller = new UploadController();
+        long now = 0;
+        for (int i = 0; i < 5; i++) {
+            controller.tryAcquire();
+            now += 100 * MS;
+            controller.onSuccess(20, 100 * MS, false, now);
+        }
+        int window = controller.getWindow();
+        for (int i = 0; i < 50; i++) {
+            controller.tryAcquire();
+            now += 2_000 * MS;
+            controller.onSuccess(20, 2_000 * MS, false, now);
+        }
+        assertEquals(window, controller.getWindow());
+    }
+
+    private static UploadController grownController() {
+        UploadController controller = new UploadController();
+        long now = 0;
+        for (int i = 0; i < 200; i++) {
+            controller.tryAcquire();
+            now += 50 * MS;
+            controller.onSuccess(20, 50 * MS, true, now);
+        }
+        return controller;
+    }
+}
@@ -0,0 +1,281 @@
+package com.haifa.zuzapp;
+
+import org.json.JSONObject;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.*;
+
+/**
+ * End-to-end upload load test: pushes synthetic or replayed sessions through
+ * MovementLogger and SupabaseClient into a FakeSupabaseServer and reports
+ * sustained records/sec, sample-to-server latency and data loss.
+ *
+ * Nothing runs by default: the scenarios are timed, multi-second runs on real
+ * threads and sockets. With
+ * ./gradlew testDebugUnitTest --tests '*UploadLoadTest*' -Dzuzapp.load.seconds=600
+ * the two short fixed scenarios run, followed by a custom run configured from
+ * any of the zuzapp.load.* options read by {@link Options#fromSystemProperties()}.
+ */
+public class UploadLoadTest {
+
+    public static class Options {
+        double seconds = 5;
+        double rateHz = 200;
+        int sessions = 1;
+        long latencyMinMs;
+        long latencyMaxMs;
+        double errorRate;
+        int errorStatus = 503;
+        double resetRate;
+        long bandwidthBytesPerSec;
+        File replay;
+        double drainSeconds = 90;
+
+        public static Options fromSystemProperties() {
+            Options o = new Options();
+            o.seconds = Double.parseDouble(System.getProperty("zuzapp.load.seconds", "30"));
+            o.rateHz = Double.parseDouble(System.getProperty("zuzapp.load.rateHz", "200"));
+            o.sessions = Integer.parseInt(System.getProperty("zuzapp.load.sessions", "1"));
+            o.latencyMinMs = Long.parseLong(System.getProperty("zuzapp.load.latencyMinMs", "0"));
+            o.latencyMaxMs = Long.parseLong(System.getProperty("zuzapp.load.latencyMaxMs",
+                    String.valueOf(o.latencyMinMs)));
+            o.errorRate = Double.parseDouble(System.getProperty("zuzapp.load.errorRate", "0"));
+            o.errorStatus = Integer.parseInt(System.getProperty("zuzapp.load.errorStatus", "503"));
+            o.resetRate = Double.parseDouble(System.getProperty("zuzapp.load.resetRate", "0"));
+            o.bandwidthBytesPerSec = Long.parseLong(System.getProperty("zuzapp.load.bandwidth", "0"));
+            String replay = System.getProperty("zuzapp.load.replay");
+            o.replay = replay != null ? new File(replay) : null;
+            return o;
+        }
+    }
+
+    public static class Result {
+        long sent;
+        long stored;
+        long lost;
+        long rowsReceived;
+        long injectedErrors;
+        long injectedResets;
+        double seconds;
+        double recordsPerSec;
+        double p50Ms;
+        double p95Ms;
+        double p99Ms;
+        double maxMs;
+        int maxWindow;
+        int maxBatchSize;
+        boolean sessionsCompleted = true;
+
+        String report() {
+            return String.format(Locale.US,
+                    "sent=%d stored=%d lost=%d rowsReceived=%d (dup=%d) errors=%d resets=%d%n"
+                            + "  %.1f s, %.1f records/s, latency p50=%.0f p95=%.0f p99=%.0f max=%.0f ms, "
+                            + "max window=%d, max batch=%d",
+                    sent, stored, lost, rowsReceived, rowsReceived - stored, injectedErrors, injectedResets,
+                    seconds, recordsPerSec, p50Ms, p95Ms, p99Ms, maxMs, maxWindow, maxBatchSize);
+        }
+    }
+
+    @Test
+    public void fullRateSessionSurvivesInjectedFaults() throws Exception {
+        assumeLoadRequested();
+        Options o = new Options();
+        o.latencyMinMs = 20;
+        o.latencyMaxMs = 80;
+        o.errorRate = 0.05;
+        o.resetRate = 0.02;
+
+        try (FakeSupabaseServer server = FakeSupabaseServer.start()) {
+            Result r = run(o, server);
+            System.out.println("Faults: " + r.report());
+            assertEquals("records lost", 0, r.lost);
+            assertTrue(r.injectedErrors + r.injectedResets > 0);
+        }
+    }
+
+    @Test
+    public void windowOpensOnHighLatencyLink() throws Exception {
+        assumeLoadRequested();
+        Options o = new Options();
+        o.rateHz = 1000;
+        o.latencyMinMs = 300;
+        o.latencyMaxMs = 300;
+
+        try (FakeSupabaseServer server = FakeSupabaseServer.start()) {
+            Result r = run(o, server);
+            System.out.println("High latency: " + r.report());
+            assertEquals("records lost", 0, r.lost);
+            assertTrue(r.sessionsCompleted);
+            assertTrue("window stayed at " + r.maxWindow, r.maxWindow > UploadController.INITIAL_WINDOW);
+            assertTrue(r.maxBatchSize > UploadController.MIN_BATCH_SIZE);
+        }
+    }
+
+    @Test
+    public void configuredLoad() throws Exception {
+        assumeLoadRequested();
+        try (FakeSupabaseServer server = FakeSupabaseServer.start()) {
+            Result r = run(Options.fromSystemProperties(), server);
+            System.out.println("Configured load: " + r.report());
+            assertEquals("records lost", 0, r.lost);
+        }
+    }
+
+    private static void assumeLoadRequested() {
+        Assume.assumeTrue("set -Dzuzapp.load.seconds to run", System.getProperty("zuzapp.load.seconds") != null);
+    }
+
+    public static void main(String[] args) throws Exception {
+        try (FakeSupabaseServer server = FakeSupabaseServer.start()) {
+            System.out.println(run(Options.fromSystemProperties(), server).report());
+        }
+    }
+
+    /**
+     * Run every session in real time on its own thread, wait for the uploads
+     * to drain, then compare what the server stored against what was logged
+     */
+    public static Result run(Options o, FakeSupabaseServer server) throws Exception {
+        server.setLatencyMillis(o.latencyMinMs, o.latencyMaxMs)
+                .setErrorRate(o.errorRate, o.errorStatus)
+                .setResetRate(o.resetRate)
+                .setBandwidthBytesPerSec(o.bandwidthBytesPerSec);
+
+        File directory = Files.createTempDirectory("zuzapp-load").toFile();
+        List<SessionRun> runs = new ArrayList<>();
+        for (int i = 0; i < o.sessions; i++) {
+            runs.add(new SessionRun(o, server, directory, "load-" + i));
+        }
+
+        long start = System.nanoTime();
+        for (SessionRun run : runs) run.thread.start();
+        for (SessionRun run : runs) run.thread.join();
+        for (SessionRun run : runs) {
+            if (run.failure != null) throw run.failure;
+        }
+
+        long total = 0;
+        for (SessionRun run : runs) total += run.count;
+        long drainDeadline = System.nanoTime() + (long) (o.drainSeconds * 1e9);
+        while (server.getMovementRowCount() < total && System.nanoTime() < drainDeadline) {
+            Thread.sleep(50);
+        }
+        // Let the session end PATCH land as well
+        Thread.sleep(Math.max(200, o.latencyMaxMs * 2));
+
+        Result r = new Result();
+        long lastReceipt = start;
+        List<Long> latencies = new ArrayList<>();
+        for (SessionRun run : runs) {
+            r.sent += run.count;
+            r.maxWindow = Math.max(r.maxWindow, run.maxWindow);
+            r.maxBatchSize = Math.max(r.maxBatchSize, run.maxBatchSize);
+            for (int i = 0; i < run.count; i++) {
+                long receipt = server.getFirstReceiptNanos(run.sessionId, run.code, i + 1);
+                if (receipt < 0) {
+                    r.lost++;
+                } else {
+                    r.stored++;
+                    latencies.add(receipt - run.generatedNanos[i]);
+                    lastReceipt = Math.max(lastReceipt, receipt);
+                }
+            }
+            JSONObject session = server.getSession(run.sessionId, run.code);
+            r.sessionsCompleted &= session != null && "completed".equals(session.optString("status"));
+            run.logger.cleanup();
+        }
+
+        r.rowsReceived = server.getMovementRowsReceived();
+        r.injectedErrors = server.getInjectedErrors();
+        r.injectedResets = server.getInjectedResets();
+        r.seconds = (lastReceipt - start) / 1e9;
+        r.recordsPerSec = r.seconds > 0 ? r.stored / r.seconds : 0;
+
+        long[] sorted = new long[latencies.size()];
+        for (int i = 0; i < sorted.length; i++) sorted[i] = latencies.get(i);
+        Arrays.sort(sorted);
+        r.p50Ms = percentileMs(sorted, 0.50);
+        r.p95Ms = percentileMs(sorted, 0.95);
+        r.p99Ms = percentileMs(sorted, 0.99);
+        r.maxMs = sorted.length > 0 ? sorted[sorted.length - 1] / 1e6 : 0;
+
+        for (File f : directory.listFiles()) f.delete();
+        directory.delete();
+        return r;
+    }
+
+    private static double percentileMs(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))] / 1e6;
+    }
+
+    /**
+     * One session pushed through its own MovementLogger/SupabaseClient pair
+     */
+    private static class SessionRun {
+        final String sessionId;
+        final String code = "LOADTEST";
+        final MovementLogger logger;
+        final Thread thread;
+        long[] generatedNanos = new long[1024];
+        int count;
+        int maxWindow;
+        int maxBatchSize;
+        Exception failure;
+
+        SessionRun(Options o, FakeSupabaseServer server, File directory, String sessionId) {
+            this.sessionId = sessionId;
+            SupabaseClient client = server.newClient();
+            this.logger = new MovementLogger(client);
+            this.thread = new Thread(() -> {
+                try {
+                    drive(o, client, directory);
+                } catch (Exception e) {
+                    failure = e;
+                }
+            }, "load-" + sessionId);
+        }
+
+        private void drive(Options o, SupabaseClient client, File directory) throws Exception {
+            SampleSource source = o.replay != null
+                    ? SampleSource.replay(o.replay)
+                    : SampleSource.synthetic(o.rateHz, sessionId.hashCode());
+            SampleSource.Sample sample = new SampleSource.Sample();
+            if (!source.next(sample)) return;
+
+            long firstEvent = sample.eventNanos;
+            logger.startSession(directory, code, sessionId, new SessionClock(firstEvent, System.currentTimeMillis()));
+            long start = System.nanoTime();
+            long end = start + (long) (o.seconds * 1e9);
+            do {
+                long due = start + (sample.eventNanos - firstEvent);
+                if (due >= end) break;
+                long wait = due - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+
+                if (count == generatedNanos.length) {
+                    generatedNanos = Arrays.copyOf(generatedNanos, count * 2);
+                }
+                generatedNanos[count++] = System.nanoTime();
+                sample.logTo(logger, sessionId, code);
+
+                if ((count & 63) == 0) {
+                    maxWindow = Math.max(maxWindow, client.getInFlightWindow());
+                    maxBatchSize = Math.max(maxBatchSize, client.getRecommendedBatchSize());
+                }
+            } while (source.next(sample));
+
+            source.close();
+            logger.stopSession();
+        }
+    }
+}